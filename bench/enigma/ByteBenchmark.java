@@ -0,0 +1,89 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Bytes converted per second by a ByteMachine, as against a
+ *  MachineCursor converting the same bytes as alphabet indices.
+ *  @author Kelvin Mo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteBenchmark {
+
+    /** Number of bytes converted per invocation. */
+    static final int LENGTH = 1 << 20;
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({ "3", "5", "8" })
+    public int rotors;
+
+    /** Byte machine under test. */
+    private ByteMachine _bytes;
+
+    /** Cursor on the same machine. */
+    private MachineCursor _cursor;
+
+    /** The input, as bytes. */
+    private byte[] _in;
+
+    /** The input, as indices. */
+    private int[] _indices;
+
+    /** Output bytes. */
+    private byte[] _out;
+
+    /** Output indices. */
+    private int[] _results;
+
+    /** Build the machine and the input. */
+    @Setup
+    public void setUp() {
+        CompiledMachine compiled =
+            Fixtures.machine(ByteMachine.SIZE, rotors).compile();
+        _bytes = new ByteMachine(compiled);
+        _cursor = compiled.cursor();
+        _in = new byte[LENGTH];
+        new Random(Fixtures.SEED).nextBytes(_in);
+        _indices = new int[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            _indices[i] = _in[i] & 0xff;
+        }
+        _out = new byte[LENGTH];
+        _results = new int[LENGTH];
+    }
+
+    /** Convert the input with the byte machine. */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public byte[] bytes() {
+        _bytes.convert(_in, 0, LENGTH, _out);
+        return _out;
+    }
+
+    /** Convert the input indices with the cursor. */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public int[] cursor() {
+        _cursor.convert(_indices, 0, LENGTH, _results);
+        return _results;
+    }
+
+}
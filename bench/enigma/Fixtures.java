@@ -0,0 +1,152 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Randomly wired alphabets, permutations, and machines of any size for
+ *  the benchmarks.  Everything is drawn from fixed seeds, so that two
+ *  runs measure exactly the same work.
+ *  @author Kelvin Mo
+ */
+final class Fixtures {
+
+    /** Seed of all random wiring. */
+    static final long SEED = 61;
+
+    /** Not instantiable. */
+    private Fixtures() {
+    }
+
+    /** Return an alphabet of SIZE characters: A-Z first, then characters
+     *  from U+0100 upward. */
+    static Alphabet alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        for (int k = 0; k < size; k++) {
+            chars.append(k < 26 ? (char) ('A' + k) : (char) (0x100 + k));
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return a random permutation of ALPHA drawn from RANDOM. */
+    static Permutation permutation(Alphabet alpha, Random random) {
+        int[] images = shuffled(alpha.size(), random);
+        return new Permutation(cycles(alpha, images), alpha);
+    }
+
+    /** Return a random permutation of ALPHA, drawn from RANDOM, that
+     *  swaps PAIRS disjoint pairs of characters and fixes the rest. */
+    static Permutation swaps(Alphabet alpha, int pairs, Random random) {
+        int n = alpha.size();
+        if (2 * pairs > n) {
+            throw error("too many pairs for alphabet");
+        }
+        int[] order = shuffled(n, random);
+        int[] images = new int[n];
+        for (int c = 0; c < n; c++) {
+            images[c] = c;
+        }
+        for (int k = 0; k < 2 * pairs; k += 2) {
+            images[order[k]] = order[k + 1];
+            images[order[k + 1]] = order[k];
+        }
+        return new Permutation(cycles(alpha, images), alpha);
+    }
+
+    /** Return a machine over an alphabet of SIZE (even) characters with
+     *  NUMROTORS slots, wired from SEED.  Slot 0 holds a reflector; with
+     *  four or more slots, slot 1 holds a fixed rotor, as on the
+     *  four-rotor naval machine; every other slot holds a moving rotor
+     *  with one notch.  Its plugboard swaps ten pairs (fewer for small
+     *  alphabets), and every rotor starts at a random setting. */
+    static Machine machine(int size, int numRotors) {
+        if (size % 2 != 0 || numRotors < 2) {
+            throw error("need an even alphabet and at least two slots");
+        }
+        Random random = new Random(SEED);
+        Alphabet alpha = alphabet(size);
+        int numFixed = numRotors >= 4 ? 2 : 1;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        names[0] = "R";
+        rotors.add(new Reflector("R", swaps(alpha, size / 2, random)));
+        for (int i = 1; i < numRotors; i++) {
+            names[i] = "S" + i;
+            Permutation perm = permutation(alpha, random);
+            if (i < numFixed) {
+                rotors.add(new FixedRotor(names[i], perm));
+            } else {
+                char notch = alpha.toChar(random.nextInt(size));
+                rotors.add(new MovingRotor(names[i], perm,
+                                           String.valueOf(notch)));
+            }
+        }
+        Machine mach = new Machine(alpha, numRotors, numRotors - numFixed,
+                                   rotors);
+        mach.insertRotors(names);
+        StringBuilder setting = new StringBuilder();
+        for (int i = 1; i < numRotors; i++) {
+            setting.append(alpha.toChar(random.nextInt(size)));
+        }
+        mach.setRotors(setting.toString());
+        mach.setPlugboard(swaps(alpha, Math.min(10, size / 4), random));
+        return mach;
+    }
+
+    /** Return LENGTH random characters of ALPHA, drawn from SEED. */
+    static String message(Alphabet alpha, int length) {
+        Random random = new Random(SEED);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = alpha.toChar(random.nextInt(alpha.size()));
+        }
+        return new String(chars);
+    }
+
+    /** Return COUNT random indices into an alphabet of SIZE, drawn from
+     *  SEED. */
+    static int[] indices(int size, int count) {
+        Random random = new Random(SEED);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = random.nextInt(size);
+        }
+        return result;
+    }
+
+    /** Return 0 .. N - 1 in an order drawn from RANDOM. */
+    private static int[] shuffled(int n, Random random) {
+        int[] result = new int[n];
+        for (int k = 0; k < n; k++) {
+            result[k] = k;
+        }
+        for (int k = n - 1; k > 0; k--) {
+            int j = random.nextInt(k + 1);
+            int t = result[k];
+            result[k] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return the cycle notation, over ALPHA, of the permutation mapping
+     *  each index C to IMAGES[C]. */
+    private static String cycles(Alphabet alpha, int[] images) {
+        StringBuilder result = new StringBuilder();
+        boolean[] done = new boolean[images.length];
+        for (int start = 0; start < images.length; start++) {
+            if (done[start]) {
+                continue;
+            }
+            result.append('(');
+            for (int c = start; !done[c]; c = images[c]) {
+                done[c] = true;
+                result.append(alpha.toChar(c));
+            }
+            result.append(") ");
+        }
+        return result.toString();
+    }
+
+}
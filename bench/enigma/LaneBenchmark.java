@@ -0,0 +1,101 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Trial decryptions per second of a ciphertext of TEXT indices from
+ *  many start positions: one MachineCursor reset for each position, as
+ *  against a LaneMachine running KeyRecovery.LANES positions at once.
+ *  @author Kelvin Mo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LaneBenchmark {
+
+    /** Number of start positions per invocation. */
+    static final int TRIALS = KeyRecovery.LANES;
+
+    /** Length of the ciphertext. */
+    static final int TEXT = 400;
+
+    /** Size of the alphabet. */
+    @Param({ "26", "96" })
+    public int size;
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({ "3", "5", "8" })
+    public int rotors;
+
+    /** Compiled machine under test. */
+    private CompiledMachine _compiled;
+
+    /** Start position of each trial. */
+    private int[][] _starts;
+
+    /** The ciphertext. */
+    private int[] _cipher;
+
+    /** Trial decryptions by lane. */
+    private int[][] _plain;
+
+    /** Cursor for the one-at-a-time trials. */
+    private MachineCursor _cursor;
+
+    /** Lane machine for the lane-wise trials. */
+    private LaneMachine _lanes;
+
+    /** Build the machine, the start positions, and the ciphertext. */
+    @Setup
+    public void setUp() {
+        _compiled = Fixtures.machine(size, rotors).compile();
+        int[] random = Fixtures.indices(size, TRIALS * rotors);
+        _starts = new int[TRIALS][rotors];
+        for (int k = 0; k < TRIALS; k++) {
+            System.arraycopy(random, k * rotors + 1, _starts[k], 1,
+                             rotors - 1);
+        }
+        _cipher = Fixtures.indices(size, TEXT);
+        _plain = new int[TRIALS][TEXT];
+        _cursor = _compiled.cursor();
+        _lanes = new LaneMachine(_compiled, TRIALS);
+    }
+
+    /** Decrypt from each start position in turn with one cursor. */
+    @Benchmark
+    @OperationsPerInvocation(TRIALS)
+    public int[][] cursor() {
+        for (int k = 0; k < TRIALS; k++) {
+            _cursor.set(_starts[k]);
+            _cursor.convert(_cipher, 0, TEXT, _plain[k]);
+        }
+        return _plain;
+    }
+
+    /** Decrypt from every start position at once on a LaneMachine. */
+    @Benchmark
+    @OperationsPerInvocation(TRIALS)
+    public int[][] lanes() {
+        for (int k = 0; k < TRIALS; k++) {
+            _lanes.set(k, _starts[k]);
+        }
+        _lanes.convert(_cipher, TEXT, _plain);
+        return _plain;
+    }
+
+}
@@ -0,0 +1,64 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of a single keypress on a Machine, per call, for several
+ *  alphabet sizes and numbers of rotors: stepping alone, and stepping
+ *  plus conversion.
+ *  @author Kelvin Mo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBenchmark {
+
+    /** Size of the alphabet. */
+    @Param({ "26", "96", "400" })
+    public int size;
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({ "3", "5", "8" })
+    public int rotors;
+
+    /** Machine under test. */
+    private Machine _machine;
+
+    /** Index converted by convert. */
+    private int _input;
+
+    /** Build the machine. */
+    @Setup
+    public void setUp() {
+        _machine = Fixtures.machine(size, rotors);
+        _input = size / 3;
+    }
+
+    /** Step the rotors once. */
+    @Benchmark
+    public int advanceRotors() {
+        _machine.advanceRotors();
+        return _machine.getRotor(rotors - 1).setting();
+    }
+
+    /** Step the rotors and convert one index. */
+    @Benchmark
+    public int convert() {
+        return _machine.convert(_input);
+    }
+
+}
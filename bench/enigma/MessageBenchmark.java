@@ -0,0 +1,62 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Time for Machine.convert(String) to convert whole messages of 1 KB to
+ *  100 MB, for several alphabet sizes and numbers of rotors.  The largest
+ *  messages need a few gigabytes of heap (the message, its copy, and the
+ *  result), which the forked JVM is given.
+ *  @author Kelvin Mo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class MessageBenchmark {
+
+    /** Size of the alphabet. */
+    @Param({ "26", "96", "400" })
+    public int size;
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({ "3", "5", "8" })
+    public int rotors;
+
+    /** Number of characters in the message. */
+    @Param({ "1024", "1048576", "104857600" })
+    public int length;
+
+    /** Machine under test. */
+    private Machine _machine;
+
+    /** Message to convert. */
+    private String _message;
+
+    /** Build the machine and the message. */
+    @Setup
+    public void setUp() {
+        _machine = Fixtures.machine(size, rotors);
+        _message = Fixtures.message(_machine.alphabet(), length);
+    }
+
+    /** Convert the whole message. */
+    @Benchmark
+    public String convert() {
+        return _machine.convert(_message);
+    }
+
+}
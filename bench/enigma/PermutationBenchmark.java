@@ -0,0 +1,74 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of Permutation.permute and Permutation.invert on indices, per
+ *  call, for several alphabet sizes.
+ *  @author Kelvin Mo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBenchmark {
+
+    /** Number of indices converted by one benchmark invocation. */
+    static final int BATCH = 1024;
+
+    /** Size of the alphabet. */
+    @Param({ "26", "96", "400" })
+    public int size;
+
+    /** Permutation under test. */
+    private Permutation _perm;
+
+    /** Indices to convert. */
+    private int[] _input;
+
+    /** Build the permutation and its input. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = Fixtures.alphabet(size);
+        _perm = Fixtures.permutation(alpha, new Random(Fixtures.SEED));
+        _input = Fixtures.indices(size, BATCH);
+    }
+
+    /** Permute a batch of indices. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int permute() {
+        int acc = 0;
+        for (int c : _input) {
+            acc += _perm.permute(c);
+        }
+        return acc;
+    }
+
+    /** Invert a batch of indices. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int invert() {
+        int acc = 0;
+        for (int c : _input) {
+            acc += _perm.invert(c);
+        }
+        return acc;
+    }
+
+}
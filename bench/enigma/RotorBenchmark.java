@@ -0,0 +1,82 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of Rotor.convertForward and Rotor.convertBackward, per call,
+ *  for several alphabet sizes, with and without the precomputed
+ *  per-setting tables (which exist only up to Rotor.SHORT_TABLE_LIMIT).
+ *  @author Kelvin Mo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBenchmark {
+
+    /** Size of the alphabet. */
+    @Param({ "26", "96", "400" })
+    public int size;
+
+    /** True to precompute the rotor's tables where possible. */
+    @Param({ "true", "false" })
+    public boolean tables;
+
+    /** Rotor under test. */
+    private Rotor _rotor;
+
+    /** Indices to convert. */
+    private int[] _input;
+
+    /** Build the rotor and its input. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = Fixtures.alphabet(size);
+        Random random = new Random(Fixtures.SEED);
+        _rotor = new MovingRotor("I", Fixtures.permutation(alpha, random),
+                                 String.valueOf(alpha.toChar(0)));
+        if (tables) {
+            _rotor.precompute();
+        }
+        _rotor.set(random.nextInt(size));
+        _input = Fixtures.indices(size, PermutationBenchmark.BATCH);
+    }
+
+    /** Convert a batch of indices forward. */
+    @Benchmark
+    @OperationsPerInvocation(PermutationBenchmark.BATCH)
+    public int convertForward() {
+        int acc = 0;
+        for (int c : _input) {
+            acc += _rotor.convertForward(c);
+        }
+        return acc;
+    }
+
+    /** Convert a batch of indices backward. */
+    @Benchmark
+    @OperationsPerInvocation(PermutationBenchmark.BATCH)
+    public int convertBackward() {
+        int acc = 0;
+        for (int c : _input) {
+            acc += _rotor.convertBackward(c);
+        }
+        return acc;
+    }
+
+}
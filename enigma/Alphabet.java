@@ -1,18 +1,94 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may hold characters outside the Basic
+ *  Multilingual Plane; the char methods serve alphabets that do not.
  *  @author Kelvin Mo
  */
 class Alphabet {
 
-    /** Alphabet of characters. */
-    private String characters;
+    /** Characters above this code get a sorted index instead of a
+     *  dense one, so that a sparse alphabet does not pay for a table
+     *  covering the whole of the BMP. */
+    private static final int DENSE_LIMIT = 1 << 12;
+
+    /** Character number K of the alphabet at position K. */
+    private int[] _codePoints;
+
+    /** True iff every character is in the Basic Multilingual Plane. */
+    private boolean _bmp;
+
+    /** Length of the dense index below, or 0 if there is none. */
+    private int _denseLength;
+
+    /** When the alphabet has fewer than 128 characters and a dense index,
+     *  the index of each character C at position C, or -1 if C is not
+     *  in the alphabet. */
+    private byte[] _denseBytes;
+
+    /** As _denseBytes, for larger alphabets (which, having a dense
+     *  index, have at most DENSE_LIMIT characters). */
+    private short[] _denseShorts;
+
+    /** When there is no dense index, the characters of the alphabet in
+     *  ascending order, with _sortedIndex holding the matching indices. */
+    private int[] _sorted;
+
+    /** Index of each character of _sorted. */
+    private int[] _sortedIndex;
 
     /** A new alphabet containing CHARS. The K-th character has index.
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        this.characters = chars;
+        _codePoints = chars.codePoints().toArray();
+        int n = _codePoints.length;
+        int max = -1;
+        for (int c : _codePoints) {
+            max = Math.max(max, c);
+        }
+        _bmp = max <= Character.MAX_VALUE;
+        if (max < DENSE_LIMIT) {
+            int[] dense = new int[max + 1];
+            Arrays.fill(dense, -1);
+            for (int i = 0; i < n; i++) {
+                if (dense[_codePoints[i]] != -1) {
+                    throw new EnigmaException("Duplicate character in "
+                            + "alphabet.");
+                }
+                dense[_codePoints[i]] = i;
+            }
+            _denseLength = dense.length;
+            if (n <= Byte.MAX_VALUE) {
+                _denseBytes = new byte[dense.length];
+                for (int c = 0; c < dense.length; c++) {
+                    _denseBytes[c] = (byte) dense[c];
+                }
+            } else {
+                _denseShorts = new short[dense.length];
+                for (int c = 0; c < dense.length; c++) {
+                    _denseShorts[c] = (short) dense[c];
+                }
+            }
+        } else {
+            long[] keyed = new long[n];
+            for (int i = 0; i < n; i++) {
+                keyed[i] = ((long) _codePoints[i] << 32) | i;
+            }
+            Arrays.sort(keyed);
+            _sorted = new int[n];
+            _sortedIndex = new int[n];
+            for (int i = 0; i < n; i++) {
+                _sorted[i] = (int) (keyed[i] >>> 32);
+                _sortedIndex[i] = (int) keyed[i];
+                if (i > 0 && _sorted[i] == _sorted[i - 1]) {
+                    throw new EnigmaException("Duplicate character in "
+                            + "alphabet.");
+                }
+            }
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -22,36 +98,84 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return this.characters.length();
+        return _codePoints.length;
+    }
+
+    /** Returns true iff every character of this alphabet is a single
+     *  char, so that the char methods apply to all of them. */
+    boolean isBmp() {
+        return _bmp;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < this.characters.length(); i++) {
-            if (this.characters.charAt(i) == ch) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(ch) >= 0;
+    }
+
+    /** Returns true if the code point CP is in this alphabet. */
+    boolean containsCodePoint(int cp) {
+        return indexOf(cp) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  The character must be in the Basic
+     *  Multilingual Plane. */
     char toChar(int index) {
-        if (index < 0 || index > this.characters.length()) {
+        int cp = toCodePoint(index);
+        if (cp > Character.MAX_VALUE) {
+            throw new EnigmaException("Character is not a single char.");
+        }
+        return (char) cp;
+    }
+
+    /** Returns character number INDEX in the alphabet, which must be in
+     *  the Basic Multilingual Plane, without checking either condition.
+     *  For the per-character paths of machines whose permutations have
+     *  been validated, and whose alphabet has been checked by isBmp(). */
+    char charAt(int index) {
+        return (char) _codePoints[index];
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        if (index < 0 || index >= _codePoints.length) {
             throw new EnigmaException("Index must be within the "
                     + "range of 0 to its size.");
         }
-        return this.characters.charAt(index);
+        return _codePoints[index];
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (!this.characters.contains(Character.toString(ch))) {
+        return codePointIndex(ch);
+    }
+
+    /** Returns the index of the code point CP, which must be in the
+     *  alphabet. This is the inverse of toCodePoint(). */
+    int codePointIndex(int cp) {
+        int index = indexOf(cp);
+        if (index < 0) {
             throw new EnigmaException("Character does not exist.");
         }
-        return characters.indexOf(ch);
+        return index;
+    }
+
+    /** Returns the index of the code point CP, or -1 if CP is not in the
+     *  alphabet. */
+    int indexOf(int cp) {
+        if (_sorted == null) {
+            if (cp < 0 || cp >= _denseLength) {
+                return -1;
+            }
+            if (_denseBytes != null) {
+                return _denseBytes[cp];
+            }
+            return _denseShorts[cp];
+        }
+        int k = Arrays.binarySearch(_sorted, cp);
+        return k < 0 ? -1 : _sortedIndex[k];
     }
 
 }
@@ -0,0 +1,96 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Kelvin Mo
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testUpper() {
+        assertEquals(26, UPPER.size());
+        for (int i = 0; i < UPPER_STRING.length(); i += 1) {
+            char c = UPPER_STRING.charAt(i);
+            assertTrue(UPPER.contains(c));
+            assertEquals(i, UPPER.toInt(c));
+            assertEquals(c, UPPER.toChar(i));
+        }
+        assertFalse(UPPER.contains('a'));
+        assertFalse(UPPER.contains('\uffff'));
+    }
+
+    @Test
+    public void testSparse() {
+        Alphabet a = new Alphabet("Z\u4e00A\uffff\u03a9");
+        assertEquals(5, a.size());
+        assertEquals(0, a.toInt('Z'));
+        assertEquals(1, a.toInt('\u4e00'));
+        assertEquals(3, a.toInt('\uffff'));
+        assertEquals(4, a.toInt('\u03a9'));
+        assertFalse(a.contains('B'));
+        assertEquals('\u4e00', a.toChar(1));
+    }
+
+    @Test
+    public void testCodePoints() {
+        String chars = "A\ud83d\ude00B\ud835\udc9c\u4e00";
+        Alphabet a = new Alphabet(chars);
+        assertEquals(5, a.size());
+        assertFalse(a.isBmp());
+        assertTrue(UPPER.isBmp());
+        assertEquals(1, a.codePointIndex(0x1f600));
+        assertEquals(3, a.codePointIndex(0x1d49c));
+        assertEquals(0x1d49c, a.toCodePoint(3));
+        assertEquals(2, a.toInt('B'));
+        assertEquals('\u4e00', a.toChar(4));
+        assertFalse(a.containsCodePoint(0x1f601));
+        assertFalse(a.contains('\ud83d'));
+    }
+
+    @Test
+    public void testLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int c = 0x100; c < 0x100 + 3000; c += 1) {
+            chars.append((char) c);
+        }
+        Alphabet a = new Alphabet(chars.toString());
+        assertEquals(3000, a.size());
+        for (int i = 0; i < a.size(); i += 1) {
+            assertEquals(i, a.toInt(a.toChar(i)));
+        }
+        assertFalse(a.contains('A'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotAChar() {
+        new Alphabet("A\ud83d\ude00").toChar(1);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMissing() {
+        UPPER.toInt('*');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testIndexOutOfRange() {
+        UPPER.toChar(26);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+}
@@ -0,0 +1,122 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many messages, each under its own settings line, on a pool
+ *  of worker threads.  Each distinct settings line is parsed once and
+ *  compiled into a CompiledMachine, which a SettingsCache keeps for
+ *  later jobs and later batches; every job then converts through its own
+ *  cursor on the compiled machine for its settings.
+ *  @author Kelvin Mo
+ */
+class BatchEncryptor {
+
+    /** Default number of jobs handed to a worker at a time. */
+    static final int DEFAULT_GROUP = 64;
+
+    /** One message to convert, and the settings line (in the format of a
+     *  "*" line of an input file) to convert it under.  Each job starts
+     *  from its settings afresh. */
+    static final class Job {
+
+        /** A job converting MESSAGE under SETTINGS. */
+        Job(String settings, String message) {
+            this.settings = settings;
+            this.message = message;
+        }
+
+        /** The settings line. */
+        final String settings;
+
+        /** The message.  Blanks are ignored, as in an input file. */
+        final String message;
+    }
+
+    /** A batch encryptor that configures MACHINE, which must hold all
+     *  the rotors its settings lines name, to compile each settings line,
+     *  and runs jobs on POOL in groups of GROUP.  MACHINE is reconfigured
+     *  by compilation, and should not otherwise be used meanwhile. */
+    BatchEncryptor(Machine machine, ExecutorService pool, int group) {
+        if (group <= 0) {
+            throw error("Group size must be positive.");
+        }
+        _compiled = new SettingsCache(machine);
+        _pool = pool;
+        _group = group;
+    }
+
+    /** A batch encryptor that compiles with MACHINE and runs jobs in the
+     *  common pool. */
+    BatchEncryptor(Machine machine) {
+        this(machine, ForkJoinPool.commonPool(), DEFAULT_GROUP);
+    }
+
+    /** Return the compiled machine for SETTINGS, compiling it if it is
+     *  not already cached.  Throws an EnigmaException if SETTINGS is
+     *  malformed. */
+    CompiledMachine compile(String settings) {
+        return _compiled.compile(settings);
+    }
+
+    /** Return the number of compiled machines cached, at most
+     *  SettingsCache.MAX_ENTRIES. */
+    int compiledCount() {
+        return _compiled.size();
+    }
+
+    /** Return the conversions of the messages of JOBS, in the same
+     *  order.  If any job fails, throws the EnigmaException of the first
+     *  one that failed. */
+    List<String> convert(List<Job> jobs) {
+        int n = jobs.size();
+        String[] results = new String[n];
+        CompiledMachine[] machines = new CompiledMachine[n];
+        for (int i = 0; i < n; i++) {
+            machines[i] = compile(jobs.get(i).settings);
+        }
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < n; start += _group) {
+            final int from = start, to = Math.min(n, start + _group);
+            tasks.add(() -> {
+                for (int i = from; i < to; i++) {
+                    String msg = jobs.get(i).message.replace(" ", "");
+                    results[i] = machines[i].cursor().convert(msg);
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> done : _pool.invokeAll(tasks)) {
+                done.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("batch failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("batch interrupted");
+        }
+        return Arrays.asList(results);
+    }
+
+    /** Compiled machine for each settings line seen so far. */
+    private final SettingsCache _compiled;
+
+    /** Pool that runs my jobs. */
+    private final ExecutorService _pool;
+
+    /** Number of jobs handed to a worker at a time. */
+    private final int _group;
+
+}
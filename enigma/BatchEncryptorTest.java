@@ -0,0 +1,126 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchEncryptor class.
+ *  @author Kelvin Mo
+ */
+public class BatchEncryptorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the conversion of JOB by a machine of its own. */
+    private String reference(BatchEncryptor.Job job) {
+        Machine mach = naval();
+        Main.setUp(mach, job.settings);
+        return mach.convert(job.message.replace(" ", ""));
+    }
+
+    /** Return N random jobs over KEYS distinct settings lines. */
+    private List<BatchEncryptor.Job> jobs(int n, int keys) {
+        Random random = new Random(61);
+        String[] moving = { "I", "II", "III", "IV", "V" };
+        String[] settings = new String[keys];
+        for (int k = 0; k < keys; k++) {
+            StringBuilder line = new StringBuilder("* B Beta");
+            for (int i = 0; i < 3; i++) {
+                line.append(' ').append(moving[(k + 2 * i) % 5]);
+            }
+            line.append(' ');
+            for (int i = 0; i < 4; i++) {
+                line.append((char) ('A' + random.nextInt(26)));
+            }
+            line.append(" (AQ) (EP)");
+            settings[k] = line.toString();
+        }
+        ArrayList<BatchEncryptor.Job> result = new ArrayList<>();
+        for (int j = 0; j < n; j++) {
+            StringBuilder msg = new StringBuilder();
+            int len = 1 + random.nextInt(60);
+            for (int i = 0; i < len; i++) {
+                msg.append((char) ('A' + random.nextInt(26)));
+            }
+            result.add(new BatchEncryptor.Job(settings[random.nextInt(keys)],
+                                              msg.toString()));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSingleJob() {
+        BatchEncryptor batch = new BatchEncryptor(naval());
+        List<String> out = batch.convert(List.of(
+            new BatchEncryptor.Job("* B Beta III IV I AXLE (HQ) (EX) (IP) "
+                                   + "(TR) (BY)",
+                                   "FROM HIS SHOULDER HIAWATHA")));
+        assertEquals(List.of("QVPQSOKOILPUBKJZPISFXDW"), out);
+    }
+
+    @Test
+    public void testManyJobsInOrder() {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            BatchEncryptor batch = new BatchEncryptor(naval(), pool, 7);
+            List<BatchEncryptor.Job> jobs = jobs(500, 20);
+            List<String> out = batch.convert(jobs);
+            assertEquals(jobs.size(), out.size());
+            for (int j = 0; j < jobs.size(); j++) {
+                assertEquals("job " + j, reference(jobs.get(j)), out.get(j));
+            }
+            assertEquals(20, batch.compiledCount());
+            batch.convert(jobs(50, 20));
+            assertEquals(20, batch.compiledCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadSettings() {
+        BatchEncryptor batch = new BatchEncryptor(naval());
+        batch.convert(List.of(new BatchEncryptor.Job("* B Beta III IV "
+                                                     + "AXLE", "HELLO")));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadMessage() {
+        BatchEncryptor batch = new BatchEncryptor(naval());
+        batch.convert(List.of(new BatchEncryptor.Job("* B Beta III IV I "
+                                                     + "AXLE", "hello")));
+    }
+
+    @Test
+    public void testCompiledBounded() {
+        BatchEncryptor batch = new BatchEncryptor(naval());
+        int n = SettingsCache.MAX_ENTRIES + 10;
+        CompiledMachine first = null;
+        for (int k = 0; k < n; k++) {
+            String position = "" + (char) ('A' + k / 676)
+                + (char) ('A' + k / 26 % 26) + (char) ('A' + k % 26);
+            CompiledMachine compiled =
+                batch.compile("* B Beta III IV I A" + position);
+            if (k == 0) {
+                first = compiled;
+            }
+            assertSame(first, batch.compile("* B Beta III IV I AAAA"));
+        }
+        assertEquals(SettingsCache.MAX_ENTRIES, batch.compiledCount());
+    }
+
+}
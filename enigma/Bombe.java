@@ -0,0 +1,500 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** Finds the settings under which a ciphertext was produced, given a
+ *  crib: a stretch of its plaintext.  Works in the manner of the Turing-
+ *  Welchman Bombe.
+ *
+ *  Where crib letter P and cipher letter C stand at time T, C = S R S P,
+ *  with S the (self-inverse) plugboard and R the rotors' permutation at
+ *  T, so R takes the plugboard partner of P to that of C.  The crib's
+ *  letter pairs form a menu, a graph on letters whose edges are labelled
+ *  by times.  For each rotor order and start position, the Bombe guesses
+ *  the partner of the most connected letter of each connected part of
+ *  the menu, follows the edges to deduce the partners of the others, and
+ *  drops the guess as soon as two deductions contradict each other.
+ *  Each guess that survives is a stop: a rotor order, start position and
+ *  partial plugboard under which the crib decrypts correctly.  Letters
+ *  absent from the menu are left unplugged.
+ *
+ *  A part of the menu that is a single pairing can never contradict a
+ *  guess: every partner for its letters fits unless it collides with
+ *  another part's, so trying each would only multiply the stops.  Such
+ *  pairs are not guessed.  Each is given the first partner consistent
+ *  with the rest of the stop, trying the letter itself (that is,
+ *  unplugged) first, so that stops never differ only in those letters.
+ *  A menu made only of such pairs cannot rule out any position, and is
+ *  not run.  At most MAX_STOPS stops are reported for one menu at one
+ *  position.
+ *
+ *  Work is split across a pool, one task per rotor order and setting of
+ *  the leftmost rotor.
+ *  @author Kelvin Mo
+ */
+class Bombe {
+
+    /** Largest number of stops reported for one menu at one start
+     *  position. */
+    static final int MAX_STOPS = 16;
+
+    /** A set of settings consistent with a crib. */
+    static final class Stop {
+
+        /** A stop with rotors ORDER at start settings SETTINGS (one per
+         *  slot), the crib at OFFSET in the ciphertext, and plugboard
+         *  PLUGBOARD (the image of each index). */
+        Stop(String[] order, int[] settings, int offset, int[] plugboard) {
+            this.order = order;
+            this.settings = settings;
+            this.offset = offset;
+            this.plugboard = plugboard;
+        }
+
+        /** Return my settings as a settings line of an input file over
+         *  the alphabet of CATALOG. */
+        String settingsLine(RotorCatalog catalog) {
+            return catalog.settingsLine(order, settings, plugboard);
+        }
+
+        /** Rotor names, the reflector first. */
+        final String[] order;
+
+        /** Setting of each slot at the start of the message. */
+        final int[] settings;
+
+        /** Position of the crib in the ciphertext. */
+        final int offset;
+
+        /** Plugboard image of each index. */
+        final int[] plugboard;
+    }
+
+    /** A Bombe for machines shaped like MACHINE, using the rotors
+     *  available to it, that runs its tasks on POOL. */
+    Bombe(Machine machine, ExecutorService pool) {
+        _catalog = new RotorCatalog(machine);
+        _pool = pool;
+    }
+
+    /** A Bombe for machines shaped like MACHINE that runs in the common
+     *  pool. */
+    Bombe(Machine machine) {
+        this(machine, ForkJoinPool.commonPool());
+    }
+
+    /** Return my catalog of rotors. */
+    RotorCatalog catalog() {
+        return _catalog;
+    }
+
+    /** Return the number of start positions tried so far. */
+    long positionsTried() {
+        return _tried.get();
+    }
+
+    /** Return the positions in CIPHER at which CRIB can lie, those at
+     *  which no letter of the crib would encrypt to itself. */
+    static List<Integer> offsets(int[] cipher, int[] crib) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int off = 0; off + crib.length <= cipher.length; off++) {
+            boolean fits = true;
+            for (int i = 0; i < crib.length && fits; i++) {
+                fits = crib[i] != cipher[off + i];
+            }
+            if (fits) {
+                result.add(off);
+            }
+        }
+        return result;
+    }
+
+    /** Return the stops for CIPHER with CRIB at each of OFFSETS, trying
+     *  every rotor order of my catalog. */
+    List<Stop> search(int[] cipher, int[] crib, List<Integer> offsets) {
+        return search(cipher, crib, offsets, _catalog.orders());
+    }
+
+    /** Return the stops for CIPHER with CRIB at each of OFFSETS, trying
+     *  the rotor orders ORDERS. */
+    List<Stop> search(int[] cipher, int[] crib, List<Integer> offsets,
+                      List<String[]> orders) {
+        if (crib.length == 0) {
+            throw error("empty crib");
+        }
+        ArrayList<Menu> loops = new ArrayList<>();
+        for (int k = 0; k < offsets.size(); k++) {
+            int off = offsets.get(k);
+            if (off < 0 || off + crib.length > cipher.length) {
+                throw error("crib does not fit at %d", off);
+            }
+            Menu menu = new Menu(cipher, crib, off, _catalog.alphabet());
+            if (menu.guessed > 0) {
+                loops.add(menu);
+            }
+        }
+        Menu[] menus = loops.toArray(new Menu[0]);
+        if (menus.length == 0) {
+            throw error("the crib's menu cannot rule out any position");
+        }
+        ArrayList<Callable<List<Stop>>> tasks = new ArrayList<>();
+        for (String[] order : orders) {
+            CompiledMachine compiled =
+                _catalog.compile(order, new int[order.length], null);
+            for (int first = 0; first < _catalog.alphabet().size();
+                 first++) {
+                final int slow = first;
+                tasks.add(() -> run(compiled, order, slow, menus));
+            }
+        }
+        ArrayList<Stop> result = new ArrayList<>();
+        try {
+            for (Future<List<Stop>> found : _pool.invokeAll(tasks)) {
+                result.addAll(found.get());
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("bombe failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("bombe interrupted");
+        }
+        return result;
+    }
+
+    /** Return the stops of MENUS on COMPILED, which has rotors ORDER,
+     *  among the start positions with slot 1 at FIRST. */
+    private List<Stop> run(CompiledMachine compiled, String[] order,
+                           int first, Menu[] menus) {
+        int n = _catalog.alphabet().size();
+        int start = Integer.MAX_VALUE, end = 0;
+        for (Menu menu : menus) {
+            start = Math.min(start, menu.start);
+            end = Math.max(end, menu.end);
+        }
+        int[] settings = new int[order.length];
+        int[] current = new int[order.length];
+        Search search = new Search(compiled, n, end);
+        ArrayList<Stop> result = new ArrayList<>();
+        long tried = 0;
+        settings[1] = first;
+        do {
+            System.arraycopy(settings, 0, current, 0, settings.length);
+            compiled.skip(current, start);
+            for (int t = start; t < end; t++) {
+                compiled.advance(current);
+                search.setPosition(t, current);
+            }
+            search.nextPosition();
+            for (Menu menu : menus) {
+                for (int[] board : search.run(menu)) {
+                    result.add(new Stop(order, settings.clone(), menu.start,
+                                        board.clone()));
+                }
+            }
+            tried += 1;
+        } while (_catalog.nextPosition(settings, 2));
+        _tried.addAndGet(tried);
+        return result;
+    }
+
+    /** The letter pairs of a crib at one offset, as a graph. */
+    private static class Menu {
+
+        /** The menu of CRIB at position OFFSET of CIPHER, over ALPHA. */
+        Menu(int[] cipher, int[] crib, int offset, Alphabet alpha) {
+            int n = alpha.size();
+            start = offset;
+            end = offset + crib.length;
+            int[] degree = new int[n];
+            for (int i = 0; i < crib.length; i++) {
+                degree[crib[i]] += 1;
+                degree[cipher[offset + i]] += 1;
+            }
+            other = new int[n][];
+            time = new int[n][];
+            for (int c = 0; c < n; c++) {
+                other[c] = new int[degree[c]];
+                time[c] = new int[degree[c]];
+                degree[c] = 0;
+            }
+            for (int i = 0; i < crib.length; i++) {
+                int p = crib[i], c = cipher[offset + i];
+                addEdge(p, c, offset + i, degree);
+                addEdge(c, p, offset + i, degree);
+            }
+            ArrayList<Integer> roots = new ArrayList<>();
+            int[] component = new int[n];
+            Arrays.fill(component, -1);
+            for (int c = 0; c < n; c++) {
+                if (other[c].length > 0 && component[c] < 0) {
+                    roots.add(mark(c, roots.size(), component));
+                }
+            }
+            int[] letters = new int[roots.size()];
+            int[] ends = new int[roots.size()];
+            for (int c = 0; c < n; c++) {
+                if (component[c] >= 0) {
+                    letters[component[c]] += 1;
+                    ends[component[c]] += other[c].length;
+                }
+            }
+            tests = new int[roots.size()];
+            int k = 0;
+            for (int r = 0; r < roots.size(); r++) {
+                if (ends[r] / 2 >= letters[r]) {
+                    tests[k++] = roots.get(r);
+                }
+            }
+            for (int r = 0; r < roots.size(); r++) {
+                if (ends[r] / 2 < letters[r] && ends[r] > 2) {
+                    tests[k++] = roots.get(r);
+                }
+            }
+            guessed = k;
+            for (int r = 0; r < roots.size(); r++) {
+                if (ends[r] / 2 < letters[r] && ends[r] == 2) {
+                    tests[k++] = roots.get(r);
+                }
+            }
+        }
+
+        /** Add an edge from A to B at time T, where A already has
+         *  FILLED[A] edges. */
+        private void addEdge(int a, int b, int t, int[] filled) {
+            other[a][filled[a]] = b;
+            time[a][filled[a]] = t;
+            filled[a] += 1;
+        }
+
+        /** Mark every letter connected to C as in component K, and return
+         *  the most connected of them. */
+        private int mark(int c, int k, int[] component) {
+            int best = c;
+            int[] stack = new int[component.length];
+            int top = 0;
+            component[c] = k;
+            stack[top++] = c;
+            while (top > 0) {
+                int a = stack[--top];
+                if (other[a].length > other[best].length) {
+                    best = a;
+                }
+                for (int b : other[a]) {
+                    if (component[b] < 0) {
+                        component[b] = k;
+                        stack[top++] = b;
+                    }
+                }
+            }
+            return best;
+        }
+
+        /** First time covered by the crib. */
+        final int start;
+
+        /** Time just past the crib. */
+        final int end;
+
+        /** For each letter, the letters it is paired with. */
+        final int[][] other;
+
+        /** For each letter, the times of its pairings. */
+        final int[][] time;
+
+        /** The most connected letter of each connected part: first the
+         *  parts with a loop, which prune the most, then the other parts
+         *  whose partners are all tried, then the single pairings, which
+         *  are not guessed. */
+        final int[] tests;
+
+        /** Number of parts at the start of TESTS whose partners are all
+         *  tried. */
+        final int guessed;
+    }
+
+    /** The guesses and deductions for one start position.  Reused from
+     *  position to position to avoid allocation.  The rotors' permutation
+     *  at each time is computed only where a deduction needs it, and
+     *  remembered until the next position. */
+    private static class Search {
+
+        /** A search on COMPILED, whose alphabet has SIZE letters, for
+         *  menus ending by time END. */
+        Search(CompiledMachine compiled, int size, int end) {
+            _compiled = compiled;
+            _size = size;
+            _queue = new int[size];
+            _settings = new int[end][compiled.numRotors()];
+            _images = new int[end][size];
+            _stamps = new int[end][size];
+        }
+
+        /** Record that the rotors are at SETTINGS at time T of the
+         *  current position. */
+        void setPosition(int t, int[] settings) {
+            System.arraycopy(settings, 0, _settings[t], 0, settings.length);
+        }
+
+        /** Forget the rotor permutations of the previous position. */
+        void nextPosition() {
+            _stamp += 1;
+        }
+
+        /** Return the rotors' image of C at time T. */
+        private int image(int t, int c) {
+            if (_stamps[t][c] != _stamp) {
+                _stamps[t][c] = _stamp;
+                _images[t][c] = _compiled.apply(c, _settings[t]);
+            }
+            return _images[t][c];
+        }
+
+        /** Return the plugboards consistent with MENU at the current
+         *  position, at most MAX_STOPS of them.  The list and its
+         *  plugboards are reused by the next call. */
+        List<int[]> run(Menu menu) {
+            _menu = menu;
+            _count = 0;
+            int depth = menu.tests.length + 1;
+            if (_partners == null || _partners.length < depth) {
+                _partners = new int[depth][_size];
+            }
+            Arrays.fill(_partners[0], -1);
+            solve(0);
+            return _found.subList(0, _count);
+        }
+
+        /** Try every partner for the test letter of part K of the menu,
+         *  or only the first that fits if part K is a single pairing,
+         *  given the partners deduced so far in _partners[K].
+         *  Stops once MAX_STOPS plugboards have been found. */
+        private void solve(int k) {
+            if (_count == MAX_STOPS) {
+                return;
+            }
+            if (k == _menu.tests.length) {
+                if (_count == _found.size()) {
+                    _found.add(new int[_size]);
+                }
+                int[] board = _found.get(_count);
+                for (int c = 0; c < _size; c++) {
+                    board[c] = _partners[k][c] < 0 ? c : _partners[k][c];
+                }
+                _count += 1;
+                return;
+            }
+            int a = _menu.tests[k];
+            int[] next = _partners[k + 1];
+            boolean guess = k < _menu.guessed;
+            for (int i = 0; i < _size; i++) {
+                int x = (a + i) % _size;
+                System.arraycopy(_partners[k], 0, next, 0, _size);
+                _tail = 0;
+                if (plug(next, a, x) && deduce(next)) {
+                    int found = _count;
+                    solve(k + 1);
+                    if (!guess && _count > found) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /** Follow the menu from each newly plugged letter, deducing
+         *  partners in PARTNERS.  Returns false on a contradiction. */
+        private boolean deduce(int[] partners) {
+            for (int head = 0; head < _tail; head++) {
+                int u = _queue[head];
+                int x = partners[u];
+                int[] other = _menu.other[u], time = _menu.time[u];
+                for (int e = 0; e < other.length; e++) {
+                    if (!plug(partners, other[e], image(time[e], x))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record in PARTNERS that A and X are partners, queueing any
+         *  newly plugged letters.  Returns false if that contradicts
+         *  what PARTNERS already holds. */
+        private boolean plug(int[] partners, int a, int x) {
+            if (partners[a] == x) {
+                return true;
+            }
+            if (partners[a] >= 0 || partners[x] >= 0) {
+                return false;
+            }
+            partners[a] = x;
+            _queue[_tail++] = a;
+            if (x != a) {
+                partners[x] = a;
+                _queue[_tail++] = x;
+            }
+            return true;
+        }
+
+        /** The machine whose rotors are searched. */
+        private final CompiledMachine _compiled;
+
+        /** Size of the alphabet. */
+        private final int _size;
+
+        /** Rotor settings at each time of the current position. */
+        private final int[][] _settings;
+
+        /** Rotor images of each letter at each time, where valid. */
+        private final int[][] _images;
+
+        /** The value of _stamp when each entry of _images was computed. */
+        private final int[][] _stamps;
+
+        /** Identifies the current position.  It is 0 until the first
+         *  call of nextPosition, which always precedes any lookup, so
+         *  the zeroed _stamps are never valid. */
+        private int _stamp;
+
+        /** Letters whose partners are newly known. */
+        private final int[] _queue;
+
+        /** Number of letters in _queue. */
+        private int _tail;
+
+        /** The menu being run. */
+        private Menu _menu;
+
+        /** Partners known at each depth of the search (-1 if unknown). */
+        private int[][] _partners;
+
+        /** Plugboards found, the first _count of them at the current
+         *  position. */
+        private final ArrayList<int[]> _found = new ArrayList<>();
+
+        /** Number of plugboards found at the current position. */
+        private int _count;
+    }
+
+    /** Rotors that may be placed in slots. */
+    private final RotorCatalog _catalog;
+
+    /** Pool running my tasks. */
+    private final ExecutorService _pool;
+
+    /** Number of start positions tried. */
+    private final AtomicLong _tried = new AtomicLong();
+
+}
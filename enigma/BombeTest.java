@@ -0,0 +1,106 @@
+package enigma;
+
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.KeyRecoveryTest.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Kelvin Mo
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings the ciphertext is produced with. */
+    private static final String SETTINGS = "* B I III QE (AR) (GT) (MZ)";
+
+    /** Return true iff STOPS includes settings B I III at QE with the crib
+     *  at OFFSET, and check that every stop decrypts CRIB at its offset
+     *  in CIPHER. */
+    private boolean found(Bombe bombe, List<Bombe.Stop> stops,
+                          String cipher, String crib, int offset) {
+        boolean result = false;
+        for (Bombe.Stop stop : stops) {
+            Machine mach = small();
+            Main.setUp(mach, stop.settingsLine(bombe.catalog()));
+            String plain = mach.convert(cipher);
+            assertEquals(crib,
+                         plain.substring(stop.offset,
+                                         stop.offset + crib.length()));
+            if (stop.settingsLine(bombe.catalog()).startsWith("* B I III QE")
+                && stop.offset == offset) {
+                assertEquals(bombe.catalog().alphabet().toInt('R'),
+                             stop.plugboard[0]);
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testKnownOffset() {
+        Bombe bombe = new Bombe(small());
+        String cipher = encrypt(SETTINGS);
+        String crib = PLAIN.substring(0, 24);
+        List<Bombe.Stop> stops =
+            bombe.search(bombe.catalog().indices(cipher),
+                         bombe.catalog().indices(crib), List.of(0));
+        assertTrue(found(bombe, stops, cipher, crib, 0));
+        assertTrue(stops.size() < 20);
+        assertEquals(12 * 26 * 26, bombe.positionsTried());
+    }
+
+    @Test
+    public void testShortCrib() {
+        Bombe bombe = new Bombe(small());
+        String cipher = encrypt(SETTINGS);
+        String crib = PLAIN.substring(40, 48);
+        List<Bombe.Stop> stops =
+            bombe.search(bombe.catalog().indices(cipher),
+                         bombe.catalog().indices(crib), List.of(40));
+        assertTrue(stops.size() < 1000);
+        boolean result = false;
+        for (Bombe.Stop stop : stops) {
+            String line = stop.settingsLine(bombe.catalog());
+            Machine mach = small();
+            Main.setUp(mach, line);
+            assertEquals(crib, mach.convert(cipher).substring(40, 48));
+            result |= line.startsWith("* B I III QE");
+        }
+        assertTrue(result);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCribOfPairsOnly() {
+        Bombe bombe = new Bombe(small());
+        String cipher = encrypt(SETTINGS);
+        bombe.search(bombe.catalog().indices(cipher),
+                     bombe.catalog().indices(PLAIN.substring(0, 1)),
+                     List.of(0));
+    }
+
+    @Test
+    public void testAllOffsets() {
+        Bombe bombe = new Bombe(small());
+        String cipher = encrypt(SETTINGS);
+        String crib = PLAIN.substring(100, 124);
+        int[] cipherIndices = bombe.catalog().indices(cipher);
+        int[] cribIndices = bombe.catalog().indices(crib);
+        List<Integer> offsets = Bombe.offsets(cipherIndices, cribIndices);
+        assertTrue(offsets.contains(100));
+        List<Bombe.Stop> stops =
+            bombe.search(cipherIndices, cribIndices, offsets);
+        assertTrue(found(bombe, stops, cipher, crib, 100));
+    }
+
+}
@@ -0,0 +1,321 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Converts raw bytes with a CompiledMachine whose alphabet has exactly
+ *  256 characters, byte B standing for the character with index B.
+ *  There is no text encoding, whitespace removal, or grouping: every
+ *  byte is one keypress, stepped exactly as Machine steps.
+ *
+ *  Between steps of the rotors other than the fast one, everything
+ *  between the fast rotor's forward and backward conversions is a fixed
+ *  permutation.  I keep that permutation in one table, rebuilt only
+ *  when a slower rotor moves, so each byte costs three lookups.
+ *  @author Kelvin Mo
+ */
+final class ByteMachine {
+
+    /** Size of the alphabet of a ByteMachine. */
+    static final int SIZE = 256;
+
+    /** Size of the buffers used by process(). */
+    static final int BUFFER = 1 << 20;
+
+    /** A converter with MACHINE, starting at its start settings. */
+    ByteMachine(CompiledMachine machine) {
+        if (machine.alphabet().size() != SIZE) {
+            throw error("binary mode requires a %d-character alphabet",
+                        SIZE);
+        }
+        _machine = machine;
+        _settings = machine.startSettings();
+        _last = _settings.length - 1;
+        _first = machine.numFixed();
+        _entry = narrow(machine.entry());
+        _exit = narrow(machine.exit());
+        _inner = new byte[SIZE];
+        _untilNotch = new int[SIZE];
+        boolean[] notches = _last >= 1 ? machine.notches(_last) : null;
+        boolean carries = _last > 1 && machine.rotates(_last - 1);
+        for (int s = SIZE - 1, k = Integer.MAX_VALUE; s >= 0; s--) {
+            if (carries && notches[s]) {
+                k = 0;
+            } else if (k != Integer.MAX_VALUE) {
+                k += 1;
+            }
+            _untilNotch[s] = k;
+        }
+        for (int s = SIZE - 1; carries && s >= 0; s--) {
+            if (_untilNotch[s] == Integer.MAX_VALUE
+                && _untilNotch[0] != Integer.MAX_VALUE) {
+                _untilNotch[s] = SIZE - s + _untilNotch[0];
+            }
+        }
+        rebuild();
+    }
+
+    /** Return the current setting of slot K. */
+    int setting(int k) {
+        return _settings[k];
+    }
+
+    /** Convert the LEN bytes of IN starting at OFF, storing the results
+     *  at the same positions of OUT (which may be IN), and advancing my
+     *  settings accordingly. */
+    void convert(byte[] in, int off, int len, byte[] out) {
+        CompiledMachine machine = _machine;
+        int[] settings = _settings;
+        if (_entry == null) {
+            for (int i = off; i < off + len; i++) {
+                machine.advance(settings);
+                out[i] = (byte) machine.apply(in[i] & 0xff, settings);
+            }
+            return;
+        }
+        byte[] entry = _entry, exit = _exit, inner = _inner;
+        boolean spins = machine.rotates(_last);
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            if (slowStep()) {
+                machine.advance(settings);
+                rebuild();
+                int base = settings[_last] * SIZE;
+                out[i] = exit[base + (inner[entry[base + (in[i] & 0xff)]
+                                            & 0xff] & 0xff)];
+                i += 1;
+                continue;
+            }
+            int s = settings[_last];
+            int stop = i + Math.min(end - i, _untilNotch[s]);
+            for (; i < stop; i++) {
+                if (spins) {
+                    s = (s + 1) & (SIZE - 1);
+                }
+                int base = s * SIZE;
+                out[i] = exit[base + (inner[entry[base + (in[i] & 0xff)]
+                                            & 0xff] & 0xff)];
+            }
+            settings[_last] = s;
+        }
+    }
+
+    /** Convert everything remaining in IN, writing the results to OUT,
+     *  in place in one buffer of BUFFER bytes, and recording the time
+     *  taken in STATS.  Returns the number of bytes converted. */
+    long process(ReadableByteChannel in, WritableByteChannel out,
+                 RunStats stats) throws IOException {
+        byte[] chunk = new byte[BUFFER];
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        long total = 0;
+        while (in.read(buffer) != -1) {
+            int n = buffer.position();
+            long start = stats.clock();
+            convert(chunk, 0, n, chunk);
+            stats.convertedPart(n, start);
+            start = stats.clock();
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+            stats.wrote(start);
+            total += n;
+        }
+        return total;
+    }
+
+    /** Return the text of a configuration for a ByteMachine made from
+     *  SEED: an alphabet of the 256 characters U+0100 to U+01FF (so
+     *  that character U+0100 + B stands for byte B), five slots, three
+     *  pawls, reflectors B and C, fixed rotors Beta and Gamma, and moving
+     *  rotors I to VIII, each with randomly chosen wiring and one
+     *  notch.  The same SEED always gives the same configuration. */
+    static String generate(long seed) {
+        Random random = new Random(seed);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < SIZE; i++) {
+            result.append(symbol(i));
+        }
+        result.append("\n 5 3\n");
+        String[] moving = { "I", "II", "III", "IV", "V", "VI", "VII",
+                            "VIII" };
+        for (String name : moving) {
+            result.append(' ').append(name).append(" M")
+                .append(symbol(random.nextInt(SIZE)));
+            cycles(shuffled(random), result);
+        }
+        for (String name : new String[] { "Beta", "Gamma" }) {
+            result.append(' ').append(name).append(" N");
+            cycles(shuffled(random), result);
+        }
+        for (String name : new String[] { "B", "C" }) {
+            int[] order = shuffled(random);
+            int[] pairs = new int[SIZE];
+            for (int i = 0; i < SIZE; i += 2) {
+                pairs[order[i]] = order[i + 1];
+                pairs[order[i + 1]] = order[i];
+            }
+            result.append(' ').append(name).append(" R");
+            cycles(pairs, result);
+        }
+        return result.toString();
+    }
+
+    /** Return the character of a generated configuration that stands
+     *  for byte B. */
+    static char symbol(int b) {
+        return (char) (0x100 + b);
+    }
+
+    /** Return a random permutation of 0 .. SIZE - 1 drawn from
+     *  RANDOM. */
+    private static int[] shuffled(Random random) {
+        int[] result = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            result[i] = i;
+        }
+        for (int i = SIZE - 1; i > 0; i--) {
+            int k = random.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[k];
+            result[k] = t;
+        }
+        return result;
+    }
+
+    /** Append the permutation FORWARD in cycle notation to RESULT,
+     *  followed by a newline. */
+    private static void cycles(int[] forward, StringBuilder result) {
+        boolean[] done = new boolean[forward.length];
+        for (int i = 0; i < forward.length; i++) {
+            if (done[i]) {
+                continue;
+            }
+            result.append(" (");
+            for (int k = i; !done[k]; k = forward[k]) {
+                done[k] = true;
+                result.append(symbol(k));
+            }
+            result.append(')');
+        }
+        result.append('\n');
+    }
+
+    /** Return true iff the next keypress moves a rotor other than the
+     *  fast one, following CompiledMachine.advance. */
+    private boolean slowStep() {
+        CompiledMachine machine = _machine;
+        int[] settings = _settings;
+        for (int i = 1; i < _last; i++) {
+            if (machine.rotates(i)
+                && (machine.notches(i + 1)[settings[i + 1]]
+                    || (i > 1 && machine.notches(i)[settings[i]]
+                        && machine.rotates(i - 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the values of TABLE, each less than SIZE, as bytes, or
+     *  null if TABLE is null. */
+    private static byte[] narrow(int[] table) {
+        if (table == null) {
+            return null;
+        }
+        byte[] result = new byte[table.length];
+        for (int i = 0; i < table.length; i++) {
+            result[i] = (byte) table[i];
+        }
+        return result;
+    }
+
+    /** Recompute _inner for my current settings.  Only the middle
+     *  rotor, next to the fast one, usually moves, so the conversion of
+     *  everything within it is kept in _outer and rebuilt only when one
+     *  of those rotors has moved too. */
+    private void rebuild() {
+        CompiledMachine machine = _machine;
+        int[] settings = _settings;
+        int middle = _last - 1;
+        if (middle < _first) {
+            int[] core = machine.core();
+            for (int c = 0; c < SIZE; c++) {
+                _inner[c] = (byte) core[c];
+            }
+            return;
+        }
+        boolean stale = _outerSettings == null;
+        for (int i = _first; !stale && i < middle; i++) {
+            stale = settings[i] != _outerSettings[i];
+        }
+        if (stale) {
+            int[] core = machine.core();
+            for (int c = 0; c < SIZE; c++) {
+                int result = c;
+                for (int i = middle - 1; i >= _first; i--) {
+                    result = machine.convertForward(i, result, settings[i]);
+                }
+                result = core[result];
+                for (int i = _first; i < middle; i++) {
+                    result = machine.convertBackward(i, result, settings[i]);
+                }
+                _outer[c] = result;
+            }
+            _outerSettings = settings.clone();
+        }
+        int[] forward = machine.forwardTable(middle);
+        int[] backward = machine.backwardTable(middle);
+        int[] outer = _outer;
+        int base = settings[middle] * SIZE;
+        for (int c = 0; c < SIZE; c++) {
+            _inner[c] = (byte) backward[base + outer[forward[base + c]]];
+        }
+    }
+
+    /** The machine I convert with. */
+    private final CompiledMachine _machine;
+
+    /** Current setting of each slot. */
+    private final int[] _settings;
+
+    /** Index of the fast rotor's slot. */
+    private final int _last;
+
+    /** Index of the first slot not folded into the machine's core. */
+    private final int _first;
+
+    /** The machine's plugboard folded into its fast rotor, or null if
+     *  the fast rotor does not move.  This and the other tables used for
+     *  each byte hold bytes, a quarter the size of the machine's int
+     *  tables, so that they stay in cache. */
+    private final byte[] _entry;
+
+    /** The fast rotor's backward conversions folded into the plugboard,
+     *  or null. */
+    private final byte[] _exit;
+
+    /** The conversion of everything between the fast rotor's forward
+     *  and backward conversions, at the current settings. */
+    private final byte[] _inner;
+
+    /** The conversion of everything between the middle rotor's forward
+     *  and backward conversions, at the settings _outerSettings. */
+    private final int[] _outer = new int[SIZE];
+
+    /** The settings for which _outer was built, or null. */
+    private int[] _outerSettings;
+
+    /** For each setting S of the fast rotor, the number of keypresses
+     *  starting there before one that moves the next rotor, or
+     *  Integer.MAX_VALUE if none ever does. */
+    private final int[] _untilNotch;
+
+}
@@ -0,0 +1,124 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ByteMachine class.
+ *  @author Kelvin Mo
+ */
+public class ByteMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    /** Return the machine of the configuration generated from SEED with
+     *  rotors ROTORS at SETTINGS (characters of the generated alphabet,
+     *  given as byte values) and plugboard BOARD. */
+    private CompiledMachine generated(long seed, String[] rotors,
+                                      int[] settings, String board) {
+        Machine mach = new ConfigParser(ByteMachine.generate(seed)).parse();
+        mach.insertRotors(rotors);
+        StringBuilder chars = new StringBuilder();
+        for (int b : settings) {
+            chars.append(ByteMachine.symbol(b));
+        }
+        mach.setRotors(chars.toString());
+        mach.setPlugboard(new Permutation(board, mach.alphabet()));
+        return mach.compile();
+    }
+
+    /** Check that converting the LEN bytes drawn from RANDOM with
+     *  MACHINE, in pieces of random length, matches a cursor. */
+    private void checkBytes(CompiledMachine machine, int len,
+                            Random random) {
+        byte[] in = new byte[len];
+        random.nextBytes(in);
+        ByteMachine bytes = new ByteMachine(machine);
+        byte[] out = new byte[len];
+        for (int off = 0, n; off < len; off += n) {
+            n = Math.min(len - off, random.nextInt(700));
+            bytes.convert(in, off, n, out);
+        }
+        MachineCursor cursor = machine.cursor();
+        for (int i = 0; i < len; i++) {
+            assertEquals("byte " + i, cursor.convert(in[i] & 0xff),
+                         out[i] & 0xff);
+        }
+        for (int k = 0; k < machine.numRotors(); k++) {
+            assertEquals(cursor.setting(k), bytes.setting(k));
+        }
+    }
+
+    @Test
+    public void testMatchesCursor() {
+        Random random = new Random(24);
+        String[] rotors = { "B", "Beta", "III", "IV", "I" };
+        String board = "(" + ByteMachine.symbol(0) + ByteMachine.symbol(255)
+            + ") (" + ByteMachine.symbol(65) + ByteMachine.symbol(66) + ")";
+        checkBytes(generated(7, rotors, new int[] { 0, 3, 9, 200 },
+                             board), 100000, random);
+        for (int trial = 0; trial < 20; trial++) {
+            int[] settings = new int[4];
+            for (int k = 0; k < settings.length; k++) {
+                settings[k] = random.nextInt(ByteMachine.SIZE);
+            }
+            checkBytes(generated(trial, rotors, settings, ""), 3000,
+                       random);
+        }
+    }
+
+    @Test
+    public void testDoubleStep() {
+        String[] rotors = { "C", "Gamma", "II", "V", "VIII" };
+        CompiledMachine probe = generated(3, rotors, new int[4], "");
+        int[] settings = new int[4];
+        for (int k = 2; k <= 4; k++) {
+            boolean[] notches = probe.notches(k);
+            for (int s = 0; s < notches.length; s++) {
+                if (notches[s]) {
+                    settings[k - 1] = (s + ByteMachine.SIZE - 1)
+                        % ByteMachine.SIZE;
+                }
+            }
+        }
+        checkBytes(generated(3, rotors, settings, ""), 2000,
+                   new Random(5));
+    }
+
+    @Test
+    public void testProcess() throws Exception {
+        CompiledMachine machine =
+            generated(11, new String[] { "B", "Beta", "VI", "VII", "II" },
+                      new int[] { 1, 2, 3, 4 }, "");
+        byte[] data = new byte[3 * ByteMachine.BUFFER / 2];
+        new Random(2).nextBytes(data);
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        assertEquals(data.length,
+                     new ByteMachine(machine).process(
+                         Channels.newChannel(new ByteArrayInputStream(data)),
+                         Channels.newChannel(encrypted), RunStats.OFF));
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        new ByteMachine(machine).process(
+            Channels.newChannel(
+                new ByteArrayInputStream(encrypted.toByteArray())),
+            Channels.newChannel(decrypted), RunStats.OFF);
+        assertArrayEquals(data, decrypted.toByteArray());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTextAlphabet() {
+        Machine mach = TestUtils.naval();
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        new ByteMachine(mach.compile());
+    }
+
+}
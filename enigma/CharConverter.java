@@ -0,0 +1,13 @@
+package enigma;
+
+/** Something that converts runs of characters as an Enigma machine
+ *  would, advancing its own rotor state as it goes.
+ *  @author Kelvin Mo
+ */
+interface CharConverter {
+
+    /** Convert the LEN characters of IN starting at OFF, storing the
+     *  results at the same positions of OUT (which may be IN). */
+    void convert(char[] in, int off, int len, char[] out);
+
+}
@@ -0,0 +1,314 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** An immutable snapshot of a configured Enigma machine: its alphabet,
+ *  the wiring of the rotors in its slots, their notches, its plugboard,
+ *  and the settings it starts from.  A CompiledMachine holds no rotor
+ *  positions of its own, so any number of threads may share one, each
+ *  converting through its own MachineCursor.  The reflector and the
+ *  non-rotating rotors next to it are folded into one table at their
+ *  start settings, so cursors cannot change those settings.
+ *
+ *  Everything I convert with is copied out of the rotors when I am
+ *  built and kept in final fields; the Rotor objects themselves, whose
+ *  settings and lazily built tables may be changed by their Machine,
+ *  are neither kept nor modified.
+ *  @author Kelvin Mo
+ */
+final class CompiledMachine {
+
+    /** A machine with alphabet ALPHA whose slots hold ROTORS (ROTORS[0]
+     *  being the reflector), starting at SETTINGS (one per slot, the
+     *  reflector's being 0), with plugboard PLUGBOARD.  The rotors'
+     *  current settings are ignored; only their wiring is used. */
+    CompiledMachine(Alphabet alpha, Rotor[] rotors, int[] settings,
+                    Permutation plugboard) {
+        if (rotors.length != settings.length) {
+            throw error("Number of settings does not match.");
+        }
+        int n = alpha.size();
+        _alphabet = alpha;
+        _size = n;
+        _settings = settings.clone();
+        _rotates = new boolean[rotors.length];
+        _notches = new boolean[rotors.length][];
+        _wiring = new int[rotors.length][];
+        _inverse = new int[rotors.length][];
+        _forward = new int[rotors.length][];
+        _backward = new int[rotors.length][];
+        int numFixed = rotors.length;
+        for (int i = 0; i < rotors.length; i++) {
+            Rotor rotor = rotors[i];
+            if (rotor == null) {
+                throw error("Rotor slot %d is empty.", i);
+            }
+            _rotates[i] = rotor.rotates();
+            if (_rotates[i] && numFixed == rotors.length) {
+                numFixed = i;
+            }
+            _notches[i] = new boolean[n];
+            for (int p = 0; p < n; p++) {
+                _notches[i][p] = rotor.atNotch(p);
+            }
+            Permutation perm = rotor.permutation();
+            _wiring[i] = new int[n];
+            _inverse[i] = new int[n];
+            for (int p = 0; p < n; p++) {
+                _wiring[i][p] = perm.permute(p);
+                _inverse[i][p] = perm.invert(p);
+            }
+            if (n <= Rotor.TABLE_LIMIT) {
+                _forward[i] = table(_wiring[i]);
+                _backward[i] = table(_inverse[i]);
+            }
+        }
+        _numFixed = numFixed;
+        _core = new int[n];
+        for (int c = 0; c < n; c++) {
+            int result = c;
+            for (int i = numFixed - 1; i >= 0; i--) {
+                result = convertForward(i, result, _settings[i]);
+            }
+            for (int i = 1; i < numFixed; i++) {
+                result = convertBackward(i, result, _settings[i]);
+            }
+            _core[c] = result;
+        }
+        _plugboard = new int[n];
+        for (int c = 0; c < n; c++) {
+            _plugboard[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+        int last = rotors.length - 1;
+        if (last >= numFixed && _forward[last] != null) {
+            _entry = new int[n * n];
+            _exit = new int[n * n];
+            for (int s = 0; s < n; s++) {
+                for (int c = 0; c < n; c++) {
+                    _entry[s * n + c] = _forward[last][s * n + _plugboard[c]];
+                    _exit[s * n + c] = _plugboard[_backward[last][s * n + c]];
+                }
+            }
+        } else {
+            _entry = _exit = null;
+        }
+    }
+
+    /** Return the conversions of a rotor wired as WIRING at every
+     *  setting S of input P, at index S * size + P. */
+    private int[] table(int[] wiring) {
+        int n = _size;
+        int[] result = new int[n * n];
+        for (int s = 0; s < n; s++) {
+            for (int p = 0; p < n; p++) {
+                int q = p + s < n ? p + s : p + s - n;
+                int r = wiring[q] - s;
+                result[s * n + p] = r < 0 ? r + n : r;
+            }
+        }
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots I have. */
+    int numRotors() {
+        return _settings.length;
+    }
+
+    /** Return the conversion of P by the rotor in slot K at setting
+     *  POSN. */
+    int convertForward(int k, int p, int posn) {
+        int n = _size;
+        if (_forward[k] != null) {
+            return _forward[k][posn * n + p];
+        }
+        int q = p + posn < n ? p + posn : p + posn - n;
+        int r = _wiring[k][q] - posn;
+        return r < 0 ? r + n : r;
+    }
+
+    /** Return the inverse conversion of P by the rotor in slot K at
+     *  setting POSN. */
+    int convertBackward(int k, int p, int posn) {
+        int n = _size;
+        if (_backward[k] != null) {
+            return _backward[k][posn * n + p];
+        }
+        int q = p + posn < n ? p + posn : p + posn - n;
+        int r = _inverse[k][q] - posn;
+        return r < 0 ? r + n : r;
+    }
+
+    /** Return the forward conversions of the rotor in slot K, indexed
+     *  [S * size + P] for input P at setting S, or null if the alphabet
+     *  is too large for them.  The array must not be modified. */
+    int[] forwardTable(int k) {
+        return _forward[k];
+    }
+
+    /** Return the backward conversions of the rotor in slot K, laid out
+     *  as for forwardTable(), or null.  The array must not be
+     *  modified. */
+    int[] backwardTable(int k) {
+        return _backward[k];
+    }
+
+    /** Return true iff the rotor in slot K rotates. */
+    boolean rotates(int k) {
+        return _rotates[k];
+    }
+
+    /** Return an array that is true at each setting at which the rotor
+     *  in slot K is at a notch.  The array must not be modified. */
+    boolean[] notches(int k) {
+        return _notches[k];
+    }
+
+    /** Return the number of leading slots folded into core(). */
+    int numFixed() {
+        return _numFixed;
+    }
+
+    /** Return the combined permutation of the first numFixed() slots.
+     *  The array must not be modified. */
+    int[] core() {
+        return _core;
+    }
+
+    /** Return the plugboard image of each index.  The array must not be
+     *  modified. */
+    int[] plugboard() {
+        return _plugboard;
+    }
+
+    /** Return my plugboard folded into my fast rotor's forward
+     *  conversions, as by Machine.foldPlugboard, or null.  The array must
+     *  not be modified. */
+    int[] entry() {
+        return _entry;
+    }
+
+    /** Return my fast rotor's backward conversions folded into my
+     *  plugboard, or null.  The array must not be modified. */
+    int[] exit() {
+        return _exit;
+    }
+
+    /** Return a copy of the settings I start from. */
+    int[] startSettings() {
+        return _settings.clone();
+    }
+
+    /** Return a new cursor positioned at my start settings. */
+    MachineCursor cursor() {
+        return new MachineCursor(this, _settings);
+    }
+
+    /** Advance SETTINGS, one per slot, as one keypress would. */
+    void advance(int[] settings) {
+        int last = settings.length - 1;
+        boolean[][] notches = _notches;
+        boolean[] rotates = _rotates;
+        for (int i = 1; i < last; i++) {
+            if (rotates[i]
+                && (notches[i + 1][settings[i + 1]]
+                    || (i > 1 && notches[i][settings[i]] && rotates[i - 1]))) {
+                settings[i] = next(settings[i]);
+            }
+        }
+        if (rotates[last]) {
+            settings[last] = next(settings[last]);
+        }
+    }
+
+    /** Return the setting after P. */
+    private int next(int p) {
+        return p + 1 == _size ? 0 : p + 1;
+    }
+
+    /** Advance SETTINGS as N keypresses would. */
+    void skip(int[] settings, long n) {
+        Stepping.skip(settings, _notches, _rotates, _size, n);
+    }
+
+    /** Return the result of passing C (an index into my alphabet) through
+     *  my plugboard, rotors, and reflector and back with my rotors at
+     *  SETTINGS, without advancing them. */
+    int apply(int c, int[] settings) {
+        int first = _numFixed;
+        int last = settings.length - 1;
+        if (_entry != null) {
+            int base = settings[last] * _size;
+            int result = _entry[base + c];
+            for (int i = last - 1; i >= first; i--) {
+                result = convertForward(i, result, settings[i]);
+            }
+            result = _core[result];
+            for (int i = first; i < last; i++) {
+                result = convertBackward(i, result, settings[i]);
+            }
+            return _exit[base + result];
+        }
+        int result = _plugboard[c];
+        for (int i = last; i >= first; i--) {
+            result = convertForward(i, result, settings[i]);
+        }
+        result = _core[result];
+        for (int i = first; i <= last; i++) {
+            result = convertBackward(i, result, settings[i]);
+        }
+        return _plugboard[result];
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** For each slot, the image of each index under its rotor's
+     *  permutation. */
+    private final int[][] _wiring;
+
+    /** For each slot, the inverse of _wiring. */
+    private final int[][] _inverse;
+
+    /** For each slot, its rotor's conversions at every setting, laid out
+     *  as by forwardTable(), or null. */
+    private final int[][] _forward;
+
+    /** For each slot, its rotor's inverse conversions, or null. */
+    private final int[][] _backward;
+
+    /** The settings of my slots when I start. */
+    private final int[] _settings;
+
+    /** True for each slot whose rotor rotates. */
+    private final boolean[] _rotates;
+
+    /** For each slot, true at each setting at which its rotor is at a
+     *  notch. */
+    private final boolean[][] _notches;
+
+    /** Number of leading slots whose rotors do not rotate. */
+    private final int _numFixed;
+
+    /** The combined permutation of the first _numFixed slots. */
+    private final int[] _core;
+
+    /** Plugboard image of each index. */
+    private final int[] _plugboard;
+
+    /** My plugboard folded into the forward conversion of my fast rotor,
+     *  as by Machine.foldPlugboard, or null. */
+    private final int[] _entry;
+
+    /** My fast rotor's backward conversion folded into my plugboard, or
+     *  null. */
+    private final int[] _exit;
+
+}
@@ -0,0 +1,182 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A directory of compiled machine configurations, so that a
+ *  configuration file read again need not be parsed again.  Each entry
+ *  is a file named by a 64-bit FNV-1a hash of the configuration's bytes,
+ *  holding those bytes (so that a hash collision is noticed) and then,
+ *  in binary, the alphabet, the numbers of slots and pawls, and each
+ *  rotor's name, type, notches, and wiring.  An entry that cannot be
+ *  read, or was made from other bytes, is treated as missing and
+ *  rewritten.  The hash is deliberately cheap: a cryptographic digest
+ *  costs more to start up than parsing a typical configuration.
+ *  @author Kelvin Mo
+ */
+class ConfigCache {
+
+    /** First int of every entry. */
+    private static final int MAGIC = 0x456e4332;
+
+    /** Suffix of entry file names. */
+    private static final String SUFFIX = ".enigma";
+
+    /** A cache keeping its entries in the directory DIR, which is
+     *  created if need be. */
+    ConfigCache(Path dir) {
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException excp) {
+            throw error("could not create cache directory %s", dir);
+        }
+        _dir = dir;
+    }
+
+    /** Return the machine described by the configuration whose contents
+     *  are CONFIG, reading it from my entry for CONFIG if I have one, and
+     *  otherwise parsing CONFIG and adding an entry for it. */
+    Machine load(byte[] config) {
+        Path entry = _dir.resolve(key(config) + SUFFIX);
+        if (Files.isReadable(entry)) {
+            try (InputStream in = Files.newInputStream(entry)) {
+                return read(config, in);
+            } catch (IOException | EnigmaException excp) {
+                /* Ignore a damaged entry; it is rewritten below. */
+            }
+        }
+        Machine result =
+            new ConfigParser(new String(config, Charset.defaultCharset()))
+            .parse();
+        try {
+            Path temp = Files.createTempFile(_dir, "entry", ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                write(config, result, out);
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            /* The cache is only an optimization, so carry on without. */
+        }
+        return result;
+    }
+
+    /** Return the name of the entry for CONFIG: the hexadecimal FNV-1a
+     *  hash of its bytes. */
+    static String key(byte[] config) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : config) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return String.format("%016x", hash);
+    }
+
+    /** Write the machine MACHINE that CONFIG describes, which must hold
+     *  only moving rotors, fixed rotors, and reflectors, to OUT. */
+    static void write(byte[] config, Machine machine, OutputStream out)
+        throws IOException {
+        DataOutputStream data =
+            new DataOutputStream(new BufferedOutputStream(out));
+        Alphabet alpha = machine.alphabet();
+        int n = alpha.size();
+        if (n > Character.MAX_VALUE + 1) {
+            throw new IOException("alphabet too large to cache");
+        }
+        data.writeInt(MAGIC);
+        data.writeInt(config.length);
+        data.write(config);
+        data.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            data.writeInt(alpha.toCodePoint(i));
+        }
+        data.writeInt(machine.numRotors());
+        data.writeInt(machine.numPawls());
+        Rotor[] rotors = machine.allRotors();
+        data.writeInt(rotors.length);
+        for (Rotor rotor : rotors) {
+            data.writeUTF(rotor.name());
+            if (rotor.rotates()) {
+                data.writeByte('M');
+                data.writeUTF(rotor.notches());
+            } else {
+                data.writeByte(rotor.reflecting() ? 'R' : 'N');
+            }
+            Permutation perm = rotor.permutation();
+            for (int i = 0; i < n; i++) {
+                data.writeChar(perm.permute(i));
+            }
+        }
+        data.flush();
+    }
+
+    /** Return the machine that write() wrote to IN for CONFIG. */
+    static Machine read(byte[] config, InputStream in) throws IOException {
+        DataInputStream data =
+            new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw error("not a configuration cache entry");
+        }
+        int length = data.readInt();
+        if (length != config.length) {
+            throw error("configuration cache entry is for another file");
+        }
+        byte[] source = new byte[length];
+        data.readFully(source);
+        if (!Arrays.equals(source, config)) {
+            throw error("configuration cache entry is for another file");
+        }
+        int n = data.readInt();
+        if (n <= 0 || n > Character.MAX_VALUE + 1) {
+            throw error("bad alphabet in configuration cache entry");
+        }
+        int[] codePoints = new int[n];
+        for (int i = 0; i < n; i++) {
+            codePoints[i] = data.readInt();
+            if (!Character.isValidCodePoint(codePoints[i])) {
+                throw error("bad alphabet in configuration cache entry");
+            }
+        }
+        Alphabet alpha = new Alphabet(new String(codePoints, 0, n));
+        int numRotors = data.readInt(), numPawls = data.readInt();
+        int count = data.readInt();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (int k = 0; k < count; k++) {
+            String name = data.readUTF();
+            int type = data.readByte();
+            String notches = type == 'M' ? data.readUTF() : null;
+            int[] forward = new int[n];
+            for (int i = 0; i < n; i++) {
+                forward[i] = data.readChar();
+                if (forward[i] >= n) {
+                    throw error("bad wiring in configuration cache entry");
+                }
+            }
+            Permutation perm = new Permutation(forward, alpha);
+            if (type == 'M') {
+                rotors.add(new MovingRotor(name, perm, notches));
+            } else if (type == 'R') {
+                rotors.add(new Reflector(name, perm));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        return new Machine(alpha, numRotors, numPawls, rotors);
+    }
+
+    /** Directory holding my entries. */
+    private final Path _dir;
+
+}
@@ -0,0 +1,158 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ConfigParser and ConfigCache
+ *  classes.
+ *  @author Kelvin Mo
+ */
+public class ConfigCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with a reflector, a fixed rotor, and two moving
+     *  rotors. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 4 2\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** A settings line for CONFIG. */
+    private static final String SETTINGS = "* B Beta I II AXL (QA) (EZ)";
+
+    /** A message. */
+    private static final String MSG = "FROMHISSHOULDERHIAWATHA";
+
+    /** Return MSG converted by MACH under SETTINGS. */
+    private static String convert(Machine mach) {
+        Main.setUp(mach, SETTINGS);
+        return mach.convert(MSG);
+    }
+
+    /** Return the number of files in DIR. */
+    private static long count(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testParse() {
+        Machine mach = new ConfigParser(CONFIG).parse();
+        assertEquals(26, mach.alphabet().size());
+        assertEquals(4, mach.numRotors());
+        assertEquals(2, mach.numPawls());
+        Rotor[] rotors = mach.allRotors();
+        assertEquals(4, rotors.length);
+        assertEquals("I", rotors[0].name());
+        assertEquals("Q", rotors[0].notches());
+        assertFalse(rotors[2].rotates());
+        assertTrue(rotors[3].reflecting());
+        assertEquals('E', rotors[3].permutation().permute('A'));
+        assertEquals('V', rotors[3].permutation().permute('T'));
+    }
+
+    @Test
+    public void testParseErrors() {
+        String[] bad = {
+            "", "AB", "AB 2", "AB x 1", "AB 2 1 I",
+            "AB 2 1 I Q (AB)", "AB 2 1 I R (AB", "AB 2 1 I R (AC)",
+        };
+        for (String config : bad) {
+            try {
+                new ConfigParser(config).parse();
+                fail(config + " accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Machine parsed = new ConfigParser(CONFIG).parse();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] config = CONFIG.getBytes();
+        ConfigCache.write(config, parsed, out);
+        Machine read =
+            ConfigCache.read(config,
+                             new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(convert(new ConfigParser(CONFIG).parse()),
+                     convert(read));
+    }
+
+    @Test
+    public void testCorruptLengths() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] config = CONFIG.getBytes();
+        ConfigCache.write(config, new ConfigParser(CONFIG).parse(), out);
+        int alphabetAt = 8 + config.length;
+        int[][] corruptions = {
+            { 4, -1 }, { 4, Integer.MAX_VALUE }, { 4, config.length + 1 },
+            { alphabetAt, -1 }, { alphabetAt, 0 },
+            { alphabetAt, Integer.MAX_VALUE },
+        };
+        for (int[] corruption : corruptions) {
+            ByteBuffer entry = ByteBuffer.wrap(out.toByteArray());
+            entry.putInt(corruption[0], corruption[1]);
+            try {
+                ConfigCache.read(config,
+                                 new ByteArrayInputStream(entry.array()));
+                fail("read a corrupt entry");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testCacheEntries() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-cache");
+        try {
+            ConfigCache cache = new ConfigCache(dir);
+            byte[] config = CONFIG.getBytes();
+            String expected = convert(new ConfigParser(CONFIG).parse());
+            assertEquals(expected, convert(cache.load(config)));
+            assertEquals(1, count(dir));
+            assertEquals(expected, convert(cache.load(config)));
+            assertEquals(1, count(dir));
+            Path entry = dir.resolve(ConfigCache.key(config) + ".enigma");
+            Files.write(entry, new byte[] { 1, 2, 3 });
+            assertEquals(expected, convert(cache.load(config)));
+            try (InputStream in = Files.newInputStream(entry)) {
+                assertEquals(expected,
+                             convert(ConfigCache.read(config, in)));
+            }
+            cache.load((CONFIG + " ").getBytes());
+            assertEquals(2, count(dir));
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+}
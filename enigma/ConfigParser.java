@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** Reads a machine configuration: an alphabet, the number of rotor slots
+ *  and of pawls, and then any number of rotor descriptions, each a name,
+ *  a type ("M" followed by notches, "N", or "R"), and a permutation in
+ *  cycle notation whose cycles are words starting with "(".  Items are
+ *  separated by whitespace.
+ *
+ *  The text is read in a single pass with no regular expressions, and
+ *  the first malformed item is reported at once.
+ *  @author Kelvin Mo
+ */
+class ConfigParser {
+
+    /** A parser for the configuration TEXT. */
+    ConfigParser(String text) {
+        _text = text;
+    }
+
+    /** Return the machine my text describes. */
+    Machine parse() {
+        _pos = 0;
+        String alpha = word();
+        if (alpha == null) {
+            throw error("configuration file truncated");
+        }
+        Alphabet alphabet = new Alphabet(alpha);
+        int numRotors = number("Does not contain arg numRotors.");
+        int numPawls = number("Does not contain arg numPawls.");
+        ArrayList<Rotor> allRotors = new ArrayList<>();
+        for (String name; (name = word()) != null;) {
+            allRotors.add(rotor(name, alphabet));
+        }
+        return new Machine(alphabet, numRotors, numPawls, allRotors);
+    }
+
+    /** Return the rotor named NAME over ALPHABET, reading its type and
+     *  permutation. */
+    private Rotor rotor(String name, Alphabet alphabet) {
+        String type = word();
+        if (type == null) {
+            throw error("bad rotor description");
+        }
+        Permutation perm = new Permutation(cycles(), alphabet);
+        if (type.charAt(0) == 'M') {
+            return new MovingRotor(name, perm, type.substring(1));
+        } else if (type.equals("N")) {
+            return new FixedRotor(name, perm);
+        } else if (type.equals("R")) {
+            return new Reflector(name, perm);
+        } else {
+            throw error("No matching rotors.");
+        }
+    }
+
+    /** Return the next word, or null if there are no more. */
+    private String word() {
+        skipWhitespace();
+        int start = _pos;
+        while (_pos < _text.length()
+               && !Character.isWhitespace(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+        return start == _pos ? null : _text.substring(start, _pos);
+    }
+
+    /** Return the next word as a number, throwing an EnigmaException
+     *  with message MSG if it is missing or not a number. */
+    private int number(String msg) {
+        String word = word();
+        if (word == null) {
+            throw error(msg);
+        }
+        try {
+            return Integer.parseInt(word);
+        } catch (NumberFormatException excp) {
+            throw error(msg);
+        }
+    }
+
+    /** Return the text of the run of words starting with "(" at my
+     *  position, leaving my position after it. */
+    private String cycles() {
+        skipWhitespace();
+        int start = _pos, end = _pos;
+        while (_pos < _text.length() && _text.charAt(_pos) == '(') {
+            word();
+            end = _pos;
+            skipWhitespace();
+        }
+        _pos = end;
+        return _text.substring(start, end);
+    }
+
+    /** Advance my position past any whitespace. */
+    private void skipWhitespace() {
+        while (_pos < _text.length()
+               && Character.isWhitespace(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+    }
+
+    /** The configuration text. */
+    private final String _text;
+
+    /** Position of the next character of _text to read. */
+    private int _pos;
+
+}
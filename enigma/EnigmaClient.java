@@ -0,0 +1,121 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** A client for EnigmaServer, which sends an input file's settings lines
+ *  and messages to a server and prints what comes back.
+ *  @author Kelvin Mo
+ */
+public final class EnigmaClient {
+
+    /** Start of the line with which a server reports an error. */
+    private static final String ERROR_PREFIX = "Error: ";
+
+    /** Not instantiable. */
+    private EnigmaClient() {
+    }
+
+    /** Send the contents of INPUT (default: standard input) to the
+     *  server at ADDRESS (as for Main's --server option), and write the
+     *  reply to OUTPUT (default: standard output).  ARGS is
+     *  ADDRESS [INPUT [OUTPUT]].  Exits with code 1 if the connection
+     *  fails or the server reports an error. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 3) {
+                throw error("Usage: java enigma.EnigmaClient ADDRESS "
+                            + "[INPUT [OUTPUT]]");
+            }
+            SocketAddress address = EnigmaServer.address(args[0]);
+            try (Reader input = args.length > 1
+                     ? new BufferedReader(new FileReader(args[1]))
+                     : new InputStreamReader(System.in);
+                 Writer output = args.length > 2
+                     ? new BufferedWriter(new FileWriter(args[2]))
+                     : new OutputStreamWriter(System.out)) {
+                if (send(address, input, output)) {
+                    return;
+                }
+            }
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Send everything in INPUT to the server at ADDRESS and copy its
+     *  reply to OUTPUT.  Returns false iff the reply ends in an error
+     *  report. */
+    static boolean send(SocketAddress address, Reader input, Writer output)
+        throws IOException {
+        try (SocketChannel connection = SocketChannel.open(address)) {
+            IOException[] sendFailure = new IOException[1];
+            Thread sender = new Thread(() -> {
+                try {
+                    Writer request =
+                        Channels.newWriter(connection, StandardCharsets.UTF_8);
+                    input.transferTo(request);
+                    request.flush();
+                    connection.shutdownOutput();
+                } catch (IOException excp) {
+                    sendFailure[0] = excp;
+                }
+            });
+            sender.start();
+            Reader reply =
+                Channels.newReader(connection, StandardCharsets.UTF_8);
+            char[] buf = new char[MessageStream.CHUNK];
+            StringBuilder lineStart = new StringBuilder();
+            boolean failed = false;
+            int n;
+            while ((n = reply.read(buf)) != -1) {
+                output.write(buf, 0, n);
+                output.flush();
+                for (int i = 0; i < n; i++) {
+                    if (buf[i] == '\n') {
+                        failed = lineStart.toString().equals(ERROR_PREFIX);
+                        lineStart.setLength(0);
+                    } else if (lineStart.length() < ERROR_PREFIX.length()) {
+                        lineStart.append(buf[i]);
+                    }
+                }
+            }
+            try {
+                sender.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            if (sendFailure[0] != null && !failed) {
+                throw sendFailure[0];
+            }
+            return !failed;
+        }
+    }
+
+    /** Return the reply of the server at ADDRESS to INPUT. */
+    static String convert(SocketAddress address, String input)
+        throws IOException {
+        StringWriter output = new StringWriter();
+        send(address, new StringReader(input), output);
+        return output.toString();
+    }
+
+}
@@ -0,0 +1,170 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running server that converts input sent over local socket
+ *  connections.  Each connection carries settings lines and messages with
+ *  the same syntax as an input file, in UTF-8, and receives the converted
+ *  messages in the same form as Main's output; the results of each
+ *  complete line are sent as soon as it has arrived.  An error ends the
+ *  connection with a line "Error: MESSAGE".
+ *
+ *  Every connection converts through its own MachineCursor, so no
+ *  connection sees another's rotor positions.  Settings lines are
+ *  compiled once, by a SettingsCache shared by all connections.  Each
+ *  connection is served on a thread of its own from a cached pool (JDK 17
+ *  has no virtual threads; on JDK 21 the pool could be
+ *  Executors.newVirtualThreadPerTaskExecutor()).
+ *  @author Kelvin Mo
+ */
+class EnigmaServer implements Closeable {
+
+    /** A server for MACHINE, which must hold all the rotors that settings
+     *  lines may name, listening on ADDRESS: a TCP address (normally on
+     *  the loopback interface) or a Unix-domain socket path. */
+    EnigmaServer(Machine machine, SocketAddress address) throws IOException {
+        _settings = new SettingsCache(machine);
+        if (address instanceof UnixDomainSocketAddress) {
+            _socketPath = ((UnixDomainSocketAddress) address).getPath();
+            _server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            _socketPath = null;
+            _server = ServerSocketChannel.open();
+        }
+        _server.bind(address);
+        _workers = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "enigma-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Return the socket address described by SPEC: a TCP port on the
+     *  loopback interface if SPEC is a number, and otherwise the path of a
+     *  Unix-domain socket. */
+    static SocketAddress address(String spec) {
+        if (spec.matches("\\d+")) {
+            int port = Integer.parseInt(spec);
+            if (port > 65535) {
+                throw error("bad port: %s", spec);
+            }
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                         port);
+        }
+        return UnixDomainSocketAddress.of(spec);
+    }
+
+    /** Return the address I am listening on. */
+    SocketAddress address() throws IOException {
+        return _server.getLocalAddress();
+    }
+
+    /** Accept and serve connections until I am closed. */
+    void serve() throws IOException {
+        try {
+            while (true) {
+                SocketChannel connection = _server.accept();
+                _workers.execute(() -> serve(connection));
+            }
+        } catch (AsynchronousCloseException excp) {
+            return;
+        }
+    }
+
+    /** Stop accepting connections.  Connections already accepted are
+     *  served to the end. */
+    @Override
+    public void close() throws IOException {
+        _server.close();
+        _workers.shutdown();
+        if (_socketPath != null) {
+            Files.deleteIfExists(_socketPath);
+        }
+    }
+
+    /** Convert everything that arrives on CONNECTION, sending back the
+     *  results, and close it. */
+    private void serve(SocketChannel connection) {
+        try (connection) {
+            Reader input =
+                Channels.newReader(connection, StandardCharsets.UTF_8);
+            Writer output =
+                new BufferedWriter(
+                    Channels.newWriter(connection, StandardCharsets.UTF_8),
+                    MessageStream.CHUNK);
+            Session session = new Session();
+            MessageStream stream =
+                new MessageStream(session, session::setUp, output);
+            try {
+                char[] buf = new char[MessageStream.CHUNK];
+                int n;
+                while ((n = input.read(buf)) != -1) {
+                    stream.feed(buf, 0, n);
+                    stream.flush();
+                }
+                stream.finish();
+            } catch (EnigmaException excp) {
+                output.write(String.format("Error: %s%n", excp.getMessage()));
+                output.flush();
+            } catch (CharacterCodingException excp) {
+                output.write(String.format("Error: input is not valid "
+                                           + "UTF-8%n"));
+                output.flush();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** The rotor state of one connection. */
+    private class Session implements CharConverter {
+
+        /** Switch to the machine described by the settings line SETTINGS,
+         *  at its start settings. */
+        void setUp(String settings) {
+            _cursor = _settings.compile(settings).cursor();
+        }
+
+        @Override
+        public void convert(char[] in, int off, int len, char[] out) {
+            _cursor.convert(in, off, len, out);
+        }
+
+        /** Converts this connection's messages. */
+        private MachineCursor _cursor;
+    }
+
+    /** Compiled machine for each settings line seen on any connection. */
+    private final SettingsCache _settings;
+
+    /** Socket on which I accept connections. */
+    private final ServerSocketChannel _server;
+
+    /** Path of my Unix-domain socket, or null if I listen on TCP. */
+    private final Path _socketPath;
+
+    /** Threads serving connections. */
+    private final ExecutorService _workers;
+
+}
@@ -0,0 +1,146 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaServer and EnigmaClient
+ *  classes.
+ *  @author Kelvin Mo
+ */
+public class EnigmaServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A settings line for the naval machine. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** The line separator the server writes. */
+    private static final String NL = System.lineSeparator();
+
+    /** Start a server for the naval machine on ADDRESS, serving on a
+     *  thread of its own. */
+    private EnigmaServer start(SocketAddress address) throws IOException {
+        EnigmaServer server = new EnigmaServer(naval(), address);
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException excp) {
+                return;
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertOverTcp() throws IOException {
+        try (EnigmaServer server = start(EnigmaServer.address("0"))) {
+            assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW" + NL,
+                         EnigmaClient.convert(server.address(),
+                                              SETTINGS + "\n"
+                                              + "FROM HIS SHOULDER HIAWATHA"
+                                              + "\n"));
+        }
+    }
+
+    @Test
+    public void testConnectionsAreIsolated() throws IOException {
+        try (EnigmaServer server = start(EnigmaServer.address("0"));
+             SocketChannel first = SocketChannel.open(server.address());
+             SocketChannel second = SocketChannel.open(server.address())) {
+            Writer firstOut =
+                Channels.newWriter(first, StandardCharsets.UTF_8);
+            BufferedReader firstIn = new BufferedReader(
+                Channels.newReader(first, StandardCharsets.UTF_8));
+            Writer secondOut =
+                Channels.newWriter(second, StandardCharsets.UTF_8);
+            BufferedReader secondIn = new BufferedReader(
+                Channels.newReader(second, StandardCharsets.UTF_8));
+            firstOut.write(SETTINGS + "\nFROMHISSHO\n");
+            firstOut.flush();
+            assertEquals("QVPQS OKOIL ", firstIn.readLine());
+            secondOut.write(SETTINGS + "\nFROMHISSHO\n");
+            secondOut.flush();
+            assertEquals("QVPQS OKOIL ", secondIn.readLine());
+            firstOut.write("ULDERHIAWATHA\n");
+            firstOut.flush();
+            assertEquals("PUBKJ ZPISF XDW", firstIn.readLine());
+        }
+    }
+
+    @Test
+    public void testErrorEndsConnection() throws IOException {
+        try (EnigmaServer server = start(EnigmaServer.address("0"))) {
+            assertEquals("Error: Format Incorrect." + NL,
+                         EnigmaClient.convert(server.address(),
+                                              "HELLO\n"));
+            assertEquals("QVPQS OKOIL " + NL,
+                         EnigmaClient.convert(server.address(),
+                                              SETTINGS + "\nFROMHISSHO\n"));
+        }
+    }
+
+    @Test
+    public void testMalformedInput() throws IOException {
+        try (EnigmaServer server = start(EnigmaServer.address("0"));
+             SocketChannel client = SocketChannel.open(server.address())) {
+            byte[] settings = (SETTINGS + "\nFROMHISSHO\n")
+                .getBytes(StandardCharsets.UTF_8);
+            ByteBuffer request =
+                ByteBuffer.allocate(settings.length + 3);
+            request.put(settings).put(new byte[] { 'A', (byte) 0xff, '\n' });
+            request.flip();
+            while (request.hasRemaining()) {
+                client.write(request);
+            }
+            client.shutdownOutput();
+            BufferedReader reply = new BufferedReader(
+                Channels.newReader(client, StandardCharsets.UTF_8));
+            String line, last = null;
+            while ((line = reply.readLine()) != null) {
+                last = line;
+            }
+            assertEquals("Error: input is not valid UTF-8", last);
+        }
+    }
+
+    @Test
+    public void testUnixDomainSocket() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("enigma.sock");
+        try (EnigmaServer server =
+                 start(EnigmaServer.address(socket.toString()))) {
+            assertTrue(server.address() instanceof UnixDomainSocketAddress);
+            assertEquals("QVPQS OKOIL " + NL,
+                         EnigmaClient.convert(server.address(),
+                                              SETTINGS + "\nFROMHISSHO\n"));
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+        }
+    }
+
+}
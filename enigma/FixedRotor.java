@@ -13,8 +13,18 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
+    @Override
+    Rotor copy() {
+        return copyState(new FixedRotor(name(), permutation()));
+    }
+
     @Override
     boolean atNotch() {
         return false;
     }
+
+    @Override
+    boolean atNotch(int posn) {
+        return false;
+    }
 }
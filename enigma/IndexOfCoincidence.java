@@ -0,0 +1,40 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Scores a text by its index of coincidence: the chance that two
+ *  letters drawn from different positions are the same.  The index of
+ *  a natural-language text is well above that of random text (about
+ *  0.066 against 0.038 for English), and it does not depend on the
+ *  order of the letters, so it ranks rotor settings without any
+ *  knowledge of the plugboard or the language's letter sequences.
+ *  @author Kelvin Mo
+ */
+class IndexOfCoincidence implements TextScorer {
+
+    /** A scorer for texts over an alphabet of SIZE characters. */
+    IndexOfCoincidence(int size) {
+        _counts = new int[size];
+    }
+
+    @Override
+    public double score(int[] text, int len) {
+        if (len < 2) {
+            return 0;
+        }
+        int[] counts = _counts;
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < len; i++) {
+            counts[text[i]] += 1;
+        }
+        long sum = 0;
+        for (int f : counts) {
+            sum += (long) f * (f - 1);
+        }
+        return (double) sum / ((long) len * (len - 1));
+    }
+
+    /** Scratch letter counts. */
+    private final int[] _counts;
+
+}
@@ -0,0 +1,99 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** Traces one keypress in every N to a Writer as JSON lines, one object
+ *  per keypress traced, such as
+ *
+ *      {"n":0,"settings":"AAXLF","path":"HZGUZSZTBMSS"}
+ *
+ *  where "n" counts keypresses from 0 (including those not traced),
+ *  "settings" holds the setting of each slot, the reflector first, as
+ *  letters, and "path" the letters the signal passes through, as for
+ *  TraceSink.trace.  Output is buffered until flush().
+ *  @author Kelvin Mo
+ */
+class JsonTraceWriter implements TraceSink {
+
+    /** A sink writing one keypress in every EVERY to OUT. */
+    JsonTraceWriter(Writer out, int every) {
+        if (every <= 0) {
+            throw error("trace sampling interval must be positive");
+        }
+        _out = out;
+        _every = every;
+        _countdown = 1;
+    }
+
+    @Override
+    public boolean sample() {
+        _count += 1;
+        _countdown -= 1;
+        if (_countdown > 0) {
+            return false;
+        }
+        _countdown = _every;
+        return true;
+    }
+
+    @Override
+    public void trace(Alphabet alphabet, int[] settings, int[] path,
+                      int len) {
+        StringBuilder line = _line;
+        line.setLength(0);
+        line.append("{\"n\":").append(_count - 1).append(",\"settings\":\"");
+        for (int setting : settings) {
+            appendCodePoint(line, alphabet.toCodePoint(setting));
+        }
+        line.append("\",\"path\":\"");
+        for (int i = 0; i < len; i += 1) {
+            appendCodePoint(line, alphabet.toCodePoint(path[i]));
+        }
+        line.append("\"}\n");
+        try {
+            _out.append(line);
+        } catch (IOException excp) {
+            throw error("could not write trace: %s", excp.getMessage());
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write trace: %s", excp.getMessage());
+        }
+    }
+
+    /** Append the code point CP to LINE, escaped as in a JSON string. */
+    private static void appendCodePoint(StringBuilder line, int cp) {
+        if (cp == '"' || cp == '\\') {
+            line.append('\\').append((char) cp);
+        } else if (cp < ' ' || (cp >= Character.MIN_SURROGATE
+                                && cp <= Character.MAX_SURROGATE)) {
+            line.append(String.format("\\u%04x", cp));
+        } else {
+            line.appendCodePoint(cp);
+        }
+    }
+
+    /** Destination of my trace. */
+    private final Writer _out;
+
+    /** One keypress in this many is traced. */
+    private final int _every;
+
+    /** Number of keypresses until the next one traced. */
+    private int _countdown;
+
+    /** Number of keypresses seen. */
+    private long _count;
+
+    /** Scratch buffer for a line. */
+    private final StringBuilder _line = new StringBuilder();
+
+}
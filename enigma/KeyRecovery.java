@@ -0,0 +1,400 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the settings of a machine from ciphertext alone.
+ *
+ *  The search has two stages.  First, every rotor order the catalog of a
+ *  Machine allows is tried at every start position, with an empty
+ *  plugboard, and the trial decryptions are ranked by a position scorer
+ *  (by default the index of coincidence, which a plugboard disturbs
+ *  little).  Then, starting from each of the best few, plugboard pairs
+ *  are added, changed, or removed one at a time for as long as that
+ *  improves the plugboard scorer's view of the decryption.
+ *
+ *  Each rotor order is compiled once, and trial decryptions run LANES
+ *  start positions at a time through a LaneMachine into reused
+ *  buffers, so the inner loops allocate nothing.  The work is split
+ *  across a pool, one task per rotor order and setting of the leftmost
+ *  rotor.
+ *  @author Kelvin Mo
+ */
+class KeyRecovery {
+
+    /** Default number of rotor settings kept for the plugboard search. */
+    static final int DEFAULT_KEEP = 10;
+
+    /** Number of start positions each worker tries at once. */
+    static final int LANES = 64;
+
+    /** A set of recovered settings, with its score. */
+    static final class Candidate {
+
+        /** Settings with the rotors named ROTORS (the reflector first) at
+         *  SETTINGS (one per slot, the reflector's being 0), plugboard
+         *  PLUGBOARD (the image of each index), and score SCORE. */
+        Candidate(String[] rotors, int[] settings, int[] plugboard,
+                  double score) {
+            this.rotors = rotors;
+            this.settings = settings;
+            this.plugboard = plugboard;
+            this.score = score;
+        }
+
+        /** Return my settings as a settings line of an input file over
+         *  the alphabet of CATALOG, such as
+         *  "* B Beta III IV I AXLE (HQ) (EX)". */
+        String settingsLine(RotorCatalog catalog) {
+            return catalog.settingsLine(rotors, settings, plugboard);
+        }
+
+        /** Rotor names, the reflector first. */
+        final String[] rotors;
+
+        /** Setting of each slot. */
+        final int[] settings;
+
+        /** Plugboard image of each index. */
+        final int[] plugboard;
+
+        /** Score of the decryption under these settings. */
+        final double score;
+    }
+
+    /** A recovery engine for machines shaped like MACHINE (its alphabet,
+     *  number of slots, and number of pawls) using the rotors available
+     *  to it.  Trials run on POOL; POSITIONS and PLUGBOARDS supply the
+     *  scorers for the two stages (one per task). */
+    KeyRecovery(Machine machine, ExecutorService pool,
+                Supplier<TextScorer> positions,
+                Supplier<TextScorer> plugboards) {
+        _catalog = new RotorCatalog(machine);
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _pool = pool;
+        _positionScorers = positions;
+        _plugboardScorers = plugboards;
+    }
+
+    /** A recovery engine for machines shaped like MACHINE, scoring by
+     *  index of coincidence, that runs in the common pool. */
+    KeyRecovery(Machine machine) {
+        this(machine, ForkJoinPool.commonPool(),
+             () -> new IndexOfCoincidence(machine.alphabet().size()),
+             () -> new IndexOfCoincidence(machine.alphabet().size()));
+    }
+
+    /** Return the number of start positions tried so far. */
+    long positionsTried() {
+        return _tried.get();
+    }
+
+    /** Return my catalog of rotors. */
+    RotorCatalog catalog() {
+        return _catalog;
+    }
+
+    /** Return the best KEEP candidates for CIPHER, best first, searching
+     *  all rotor orders and start positions and then the plugboard. */
+    List<Candidate> recover(int[] cipher, int keep) {
+        ArrayList<Callable<Candidate>> climbs = new ArrayList<>();
+        for (Candidate start
+                 : searchPositions(cipher, _catalog.orders(), keep)) {
+            climbs.add(() -> climbPlugboard(cipher, start));
+        }
+        ArrayList<Candidate> result = new ArrayList<>();
+        for (Future<Candidate> climbed : invokeAll(climbs)) {
+            result.add(get(climbed));
+        }
+        result.sort((a, b) -> Double.compare(b.score, a.score));
+        return result;
+    }
+
+    /** Return the KEEP best candidates, best first, among all the start
+     *  positions of the rotor orders ORDERS, decrypting CIPHER with an
+     *  empty plugboard. */
+    List<Candidate> searchPositions(int[] cipher, List<String[]> orders,
+                                    int keep) {
+        ArrayList<Callable<Leaders>> tasks = new ArrayList<>();
+        for (String[] order : orders) {
+            CompiledMachine compiled =
+                _catalog.compile(order, new int[_numRotors], null);
+            for (int first = 0; first < _alphabet.size(); first++) {
+                final int slow = first;
+                tasks.add(() -> searchFrom(compiled, order, slow, cipher,
+                                           keep));
+            }
+        }
+        Leaders best = new Leaders(keep);
+        for (Future<Leaders> found : invokeAll(tasks)) {
+            best.addAll(get(found));
+        }
+        return best.sorted();
+    }
+
+    /** Return the best KEEP candidates for CIPHER on COMPILED, which has
+     *  rotors ORDER, among start positions with slot 1 at FIRST.  The
+     *  positions are tried LANES at a time on a LaneMachine. */
+    private Leaders searchFrom(CompiledMachine compiled, String[] order,
+                               int first, int[] cipher, int keep) {
+        TextScorer scorer = _positionScorers.get();
+        LaneMachine lanes = new LaneMachine(compiled, LANES);
+        int[] settings = new int[_numRotors];
+        int[][] starts = new int[LANES][_numRotors];
+        int[][] plain = new int[LANES][cipher.length];
+        int[] identity = identity();
+        Leaders best = new Leaders(keep);
+        long tried = 0;
+        boolean more = true;
+        settings[1] = first;
+        while (more) {
+            int used = 0;
+            while (more && used < LANES) {
+                lanes.set(used, settings);
+                System.arraycopy(settings, 0, starts[used], 0, _numRotors);
+                used += 1;
+                more = _catalog.nextPosition(settings, 2);
+            }
+            lanes.convert(cipher, cipher.length, plain);
+            for (int lane = 0; lane < used; lane++) {
+                double score = scorer.score(plain[lane], cipher.length);
+                if (best.accepts(score)) {
+                    best.add(new Candidate(order, starts[lane].clone(),
+                                           identity, score));
+                }
+            }
+            tried += used;
+        }
+        _tried.addAndGet(tried);
+        return best;
+    }
+
+    /** Return START with the plugboard that maximizes the plugboard
+     *  scorer's view of the decryption of CIPHER, found by hill
+     *  climbing: each step toggles the pair that helps most, and the
+     *  climb ends when no toggle helps.  A toggle changes the decryption
+     *  only where the ciphertext letter or the letter leaving the rotors
+     *  is one whose plug moved, so only those positions are decrypted
+     *  again, and the scorer is asked to rescore only them. */
+    Candidate climbPlugboard(int[] cipher, Candidate start) {
+        TextScorer scorer = _plugboardScorers.get();
+        int n = _alphabet.size(), len = cipher.length;
+        int[] wiring = wiring(start, len);
+        int[] board = start.plugboard.clone();
+        int[] trial = new int[n];
+        int[] mid = new int[len], out = new int[len], next = new int[len];
+        int[] changed = new int[len];
+        boolean[] moved = new boolean[n];
+        double best = decrypt(wiring, board, cipher, mid, out, scorer);
+        System.arraycopy(out, 0, next, 0, len);
+        while (true) {
+            double current = best;
+            int bestA = -1, bestB = -1;
+            for (int a = 0; a < n; a++) {
+                for (int b = a + 1; b < n; b++) {
+                    System.arraycopy(board, 0, trial, 0, n);
+                    toggle(trial, a, b);
+                    moved[a] = moved[b] = true;
+                    moved[board[a]] = moved[board[b]] = true;
+                    int count = 0;
+                    for (int i = 0; i < len; i++) {
+                        if (moved[cipher[i]] || moved[mid[i]]) {
+                            next[i] = trial[wiring[i * n + trial[cipher[i]]]];
+                            changed[count++] = i;
+                        }
+                    }
+                    double score = scorer.rescore(out, current, next, len,
+                                                  changed, count);
+                    for (int j = 0; j < count; j++) {
+                        next[changed[j]] = out[changed[j]];
+                    }
+                    moved[a] = moved[b] = false;
+                    moved[board[a]] = moved[board[b]] = false;
+                    if (score > best) {
+                        best = score;
+                        bestA = a;
+                        bestB = b;
+                    }
+                }
+            }
+            if (bestA < 0) {
+                break;
+            }
+            toggle(board, bestA, bestB);
+            best = decrypt(wiring, board, cipher, mid, out, scorer);
+            System.arraycopy(out, 0, next, 0, len);
+        }
+        return new Candidate(start.rotors, start.settings, board, best);
+    }
+
+    /** Return the permutation the rotors of START, without a plugboard,
+     *  apply at each of the first LEN positions from its settings, as a
+     *  flat array indexed [I * size + C] for position I and input C. */
+    private int[] wiring(Candidate start, int len) {
+        MachineCursor cursor =
+            _catalog.compile(start.rotors, start.settings, null).cursor();
+        int n = _alphabet.size();
+        int[] in = new int[len], out = new int[len];
+        int[] result = new int[len * n];
+        for (int c = 0; c < n; c++) {
+            Arrays.fill(in, c);
+            cursor.set(start.settings);
+            cursor.convert(in, 0, len, out);
+            for (int i = 0; i < len; i++) {
+                result[i * n + c] = out[i];
+            }
+        }
+        return result;
+    }
+
+    /** Decrypt CIPHER through WIRING (as from wiring()) under plugboard
+     *  BOARD, leaving the letters that leave the rotors in MID and the
+     *  result in OUT, and return SCORER's score of the result. */
+    private double decrypt(int[] wiring, int[] board, int[] cipher,
+                           int[] mid, int[] out, TextScorer scorer) {
+        int n = board.length, len = cipher.length;
+        for (int i = 0; i < len; i++) {
+            mid[i] = wiring[i * n + board[cipher[i]]];
+            out[i] = board[mid[i]];
+        }
+        return scorer.score(out, len);
+    }
+
+    /** Change plugboard BOARD so that A and B are swapped with each
+     *  other, unplugging their previous partners, unless they already
+     *  were, in which case unplug them. */
+    private static void toggle(int[] board, int a, int b) {
+        if (board[a] == b) {
+            board[a] = a;
+            board[b] = b;
+            return;
+        }
+        board[board[a]] = board[a];
+        board[board[b]] = board[b];
+        board[a] = b;
+        board[b] = a;
+    }
+
+    /** Return the empty plugboard. */
+    private int[] identity() {
+        int[] result = new int[_alphabet.size()];
+        for (int c = 0; c < result.length; c++) {
+            result[c] = c;
+        }
+        return result;
+    }
+
+    /** Run TASKS on my pool and return their futures. */
+    private <T> List<Future<T>> invokeAll(List<Callable<T>> tasks) {
+        try {
+            return _pool.invokeAll(tasks);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("key recovery interrupted");
+        }
+    }
+
+    /** Return the result of DONE, rethrowing its failure. */
+    private static <T> T get(Future<T> done) {
+        try {
+            return done.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("key recovery failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("key recovery interrupted");
+        }
+    }
+
+    /** The best few candidates seen, by score. */
+    private static class Leaders {
+
+        /** An empty set that keeps at most SIZE candidates. */
+        Leaders(int size) {
+            _best = new Candidate[size];
+        }
+
+        /** Return true iff a candidate with SCORE would be kept. */
+        boolean accepts(double score) {
+            return _count < _best.length || score > _best[_worst].score;
+        }
+
+        /** Add CANDIDATE if it is among my best. */
+        void add(Candidate candidate) {
+            if (!accepts(candidate.score)) {
+                return;
+            }
+            if (_count < _best.length) {
+                _best[_count] = candidate;
+                _count += 1;
+            } else {
+                _best[_worst] = candidate;
+            }
+            _worst = 0;
+            for (int i = 1; i < _count; i++) {
+                if (_best[i].score < _best[_worst].score) {
+                    _worst = i;
+                }
+            }
+        }
+
+        /** Add all of the candidates in OTHER. */
+        void addAll(Leaders other) {
+            for (int i = 0; i < other._count; i++) {
+                add(other._best[i]);
+            }
+        }
+
+        /** Return my candidates, best first. */
+        List<Candidate> sorted() {
+            Candidate[] result = Arrays.copyOf(_best, _count);
+            Arrays.sort(result, (a, b) -> Double.compare(b.score, a.score));
+            return Arrays.asList(result);
+        }
+
+        /** My candidates; the first _count are valid. */
+        private final Candidate[] _best;
+
+        /** Number of candidates I hold. */
+        private int _count;
+
+        /** Index of my worst candidate. */
+        private int _worst;
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** Number of slots of the machines I search. */
+    private final int _numRotors;
+
+    /** Rotors that may be placed in slots. */
+    private final RotorCatalog _catalog;
+
+    /** Pool running my tasks. */
+    private final ExecutorService _pool;
+
+    /** Supplies a scorer for each rotor-position task. */
+    private final Supplier<TextScorer> _positionScorers;
+
+    /** Supplies a scorer for each plugboard climb. */
+    private final Supplier<TextScorer> _plugboardScorers;
+
+    /** Number of start positions tried. */
+    private final AtomicLong _tried = new AtomicLong();
+
+}
@@ -0,0 +1,100 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeyRecovery class.
+ *  @author Kelvin Mo
+ */
+public class KeyRecoveryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** English plaintext. */
+    static final String PLAIN =
+        "SHOULDYOUASKMEWHENCETHESESTORIESWHENCETHESELEGENDSAND"
+        + "TRADITIONSWITHTHEODOURSOFTHEFORESTWITHTHEDEWANDDAMPOF"
+        + "MEADOWSWITHTHECURLINGSMOKEOFWIGWAMSWITHTHERUSHINGOFGREAT"
+        + "RIVERSWITHTHEIRFREQUENTREPETITIONSANDTHEIRWILDREVERBERA"
+        + "TIONSASOFTHUNDERINTHEMOUNTAINSISHOULDANSWERISHOULDTELL"
+        + "YOUFROMTHEFORESTSANDTHEPRAIRIESFROMTHEGREATLAKESOFTHE"
+        + "NORTHLANDFROMTHELANDOFTHEOJIBWAYSFROMTHELANDOFTHEDACOT"
+        + "AHSFROMTHEMOUNTAINSMOORSANDFENLANDSWHERETHEHERONTHESHU"
+        + "HSHUHGAHFEEDSAMONGTHEREEDSANDRUSHESIREPEATTHEMASIHEARD"
+        + "THEMFROMTHELIPSOFNAWADAHATHEMUSICIANTHESWEETSINGER";
+
+    /** Return a three-slot machine whose catalog holds reflectors B and
+     *  C and moving rotors I, II, and III. */
+    static Machine small() {
+        Alphabet alpha = new Alphabet(UPPER_STRING);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : new String[] { "B", "C" }) {
+            rotors.add(new Reflector(name,
+                                     new Permutation(NAVALA.get(name),
+                                                     alpha)));
+        }
+        for (String name : new String[] { "I", "II", "III" }) {
+            rotors.add(new MovingRotor(name,
+                                       new Permutation(NAVALA.get(name),
+                                                       alpha),
+                                       NAVAL_NOTCHES.get(name)));
+        }
+        return new Machine(alpha, 3, 2, rotors);
+    }
+
+    /** Return PLAIN encrypted under SETTINGS on a small machine. */
+    static String encrypt(String settings) {
+        Machine mach = small();
+        Main.setUp(mach, settings);
+        return mach.convert(PLAIN);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRotorOrders() {
+        List<String[]> orders = new KeyRecovery(small()).catalog().orders();
+        assertEquals(12, orders.size());
+        for (String[] order : orders) {
+            assertTrue(order[0].equals("B") || order[0].equals("C"));
+            assertFalse(order[1].equals(order[2]));
+        }
+        assertEquals(2 * 2 * 5 * 4 * 3,
+                     new KeyRecovery(naval()).catalog().orders().size());
+    }
+
+    @Test
+    public void testPositionsWithoutPlugboard() {
+        String settings = "* C II III KD";
+        KeyRecovery recovery = new KeyRecovery(small());
+        int[] cipher = recovery.catalog().indices(encrypt(settings));
+        List<KeyRecovery.Candidate> found =
+            recovery.searchPositions(cipher, recovery.catalog().orders(),
+                                     3);
+        assertEquals(settings,
+                     found.get(0).settingsLine(recovery.catalog()));
+        assertEquals(12 * 26 * 26, recovery.positionsTried());
+    }
+
+    @Test
+    public void testRecoverWithPlugboard() {
+        String settings = "* B I III QE (AR) (GT) (MZ)";
+        KeyRecovery recovery = new KeyRecovery(small());
+        int[] cipher = recovery.catalog().indices(encrypt(settings));
+        KeyRecovery.Candidate best = recovery.recover(cipher, 5).get(0);
+        Machine mach = small();
+        Main.setUp(mach, best.settingsLine(recovery.catalog()));
+        assertEquals(PLAIN, mach.convert(encrypt(settings)));
+    }
+
+}
@@ -0,0 +1,273 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded cache of the complete permutations a machine performs at
+ *  particular rotor positions.  Each entry maps every index of the
+ *  alphabet through plugboard, rotors, reflector, and back, and is
+ *  stored as a byte[] (alphabets of up to 256 characters) or a char[].
+ *  Entries are keyed by a long, and are evicted by the clock
+ *  (second-chance) policy once the cache holds as many as its memory
+ *  budget allows.  The budget is a ceiling: storage grows by doubling
+ *  as entries are added, so a machine that reaches few positions never
+ *  pays for more.  Lookups and hits allocate nothing.  A cache is not
+ *  thread-safe.
+ *  @author Kelvin Mo
+ */
+class KeystreamCache {
+
+    /** Bytes of bookkeeping charged to each entry, on top of its table. */
+    private static final int ENTRY_OVERHEAD = 48;
+
+    /** Number of entries for which storage is allocated at first. */
+    static final int INITIAL_ENTRIES = 1024;
+
+    /** Maximum number of configuration signatures I remember. */
+    static final int MAX_CONFIGURATIONS = 64;
+
+    /** A cache for an alphabet of SIZE characters that keeps at most
+     *  about MAXBYTES bytes of entries, and always at least one. */
+    KeystreamCache(int size, long maxBytes) {
+        if (size > Character.MAX_VALUE + 1) {
+            throw error("alphabet too large for keystream cache");
+        }
+        _size = size;
+        long entryBytes = (size <= 256 ? size : 2L * size) + ENTRY_OVERHEAD;
+        _capacity = (int) Math.max(1, Math.min(1 << 24,
+                                               maxBytes / entryBytes));
+        int slots = Math.min(_capacity, INITIAL_ENTRIES);
+        if (size <= 256) {
+            _bytes = new byte[slots][];
+        } else {
+            _chars = new char[slots][];
+        }
+        _keys = new long[slots];
+        _referenced = new boolean[slots];
+        index(slots);
+    }
+
+    /** Return the size of the alphabet whose permutations I hold. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the maximum number of entries I hold. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of entries for which I have allocated
+     *  storage. */
+    int allocated() {
+        return _keys.length;
+    }
+
+    /** Return the number of entries I hold. */
+    int entries() {
+        return _used;
+    }
+
+    /** Return a non-negative number identifying the machine
+     *  configuration described by SIGNATURE, the same each time the same
+     *  signature is presented to me while I still remember it.  I
+     *  remember only the MAX_CONFIGURATIONS signatures most recently
+     *  presented; one forgotten and presented again gets a new number,
+     *  so numbers are never reused, and entries made under the old one
+     *  are simply never found again. */
+    int configuration(String signature) {
+        Integer id = _configurations.get(signature);
+        if (id == null) {
+            id = _nextConfiguration;
+            _nextConfiguration += 1;
+            _configurations.put(signature, id);
+        }
+        return id;
+    }
+
+    /** Return the number of configuration signatures I remember. */
+    int configurations() {
+        return _configurations.size();
+    }
+
+    /** Return the slot holding the entry for KEY, or -1 if there is
+     *  none. */
+    int find(long key) {
+        int mask = _bucketSlots.length - 1;
+        for (int b = hash(key) & mask; _bucketSlots[b] >= 0;
+             b = (b + 1) & mask) {
+            if (_bucketKeys[b] == key) {
+                int slot = _bucketSlots[b];
+                _referenced[slot] = true;
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /** Store TABLE, a permutation of my alphabet's indices, as the entry
+     *  for KEY, which must not be present, evicting an entry if I am
+     *  full.  Returns the slot holding it. */
+    int insert(long key, int[] table) {
+        int slot;
+        if (_used < _capacity) {
+            if (_used == _keys.length) {
+                grow();
+            }
+            slot = _used;
+            _used += 1;
+        } else {
+            while (_referenced[_hand]) {
+                _referenced[_hand] = false;
+                _hand = (_hand + 1) % _capacity;
+            }
+            slot = _hand;
+            _hand = (_hand + 1) % _capacity;
+            remove(_keys[slot]);
+        }
+        if (_bytes != null) {
+            byte[] entry = _bytes[slot];
+            if (entry == null) {
+                entry = new byte[_size];
+            }
+            for (int c = 0; c < _size; c++) {
+                entry[c] = (byte) table[c];
+            }
+            _bytes[slot] = entry;
+        } else {
+            char[] entry = _chars[slot];
+            if (entry == null) {
+                entry = new char[_size];
+            }
+            for (int c = 0; c < _size; c++) {
+                entry[c] = (char) table[c];
+            }
+            _chars[slot] = entry;
+        }
+        _keys[slot] = key;
+        _referenced[slot] = true;
+        place(key, slot);
+        return slot;
+    }
+
+    /** Return the image of index C under the entry in SLOT. */
+    int map(int slot, int c) {
+        if (_bytes != null) {
+            return _bytes[slot][c] & 0xff;
+        }
+        return _chars[slot][c];
+    }
+
+    /** Double my storage, up to my capacity, and rebuild my hash index
+     *  to match. */
+    private void grow() {
+        int slots = (int) Math.min(_capacity, 2L * _keys.length);
+        if (_bytes != null) {
+            _bytes = Arrays.copyOf(_bytes, slots);
+        } else {
+            _chars = Arrays.copyOf(_chars, slots);
+        }
+        _keys = Arrays.copyOf(_keys, slots);
+        _referenced = Arrays.copyOf(_referenced, slots);
+        index(slots);
+        for (int slot = 0; slot < _used; slot++) {
+            place(_keys[slot], slot);
+        }
+    }
+
+    /** Replace my hash index by an empty one suitable for SLOTS
+     *  entries. */
+    private void index(int slots) {
+        int buckets = Integer.highestOneBit(slots) * 4;
+        _bucketKeys = new long[buckets];
+        _bucketSlots = new int[buckets];
+        Arrays.fill(_bucketSlots, -1);
+    }
+
+    /** Add KEY, held in SLOT, to my hash index. */
+    private void place(long key, int slot) {
+        int mask = _bucketSlots.length - 1;
+        int b = hash(key) & mask;
+        while (_bucketSlots[b] >= 0) {
+            b = (b + 1) & mask;
+        }
+        _bucketKeys[b] = key;
+        _bucketSlots[b] = slot;
+    }
+
+    /** Remove KEY from my hash index, shifting later entries of its
+     *  probe sequence back so that no lookup stops short. */
+    private void remove(long key) {
+        int mask = _bucketSlots.length - 1;
+        int b = hash(key) & mask;
+        while (_bucketKeys[b] != key || _bucketSlots[b] < 0) {
+            b = (b + 1) & mask;
+        }
+        int hole = b;
+        for (b = (hole + 1) & mask; _bucketSlots[b] >= 0;
+             b = (b + 1) & mask) {
+            int home = hash(_bucketKeys[b]) & mask;
+            if (((b - home) & mask) >= ((b - hole) & mask)) {
+                _bucketKeys[hole] = _bucketKeys[b];
+                _bucketSlots[hole] = _bucketSlots[b];
+                hole = b;
+            }
+        }
+        _bucketSlots[hole] = -1;
+    }
+
+    /** Return a well-mixed hash of KEY. */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Maximum number of entries. */
+    private final int _capacity;
+
+    /** Entries by slot, for alphabets of up to 256 characters. */
+    private byte[][] _bytes;
+
+    /** Entries by slot, for larger alphabets. */
+    private char[][] _chars;
+
+    /** Key of the entry in each slot. */
+    private long[] _keys;
+
+    /** Clock reference bit of each slot. */
+    private boolean[] _referenced;
+
+    /** Number of slots in use. */
+    private int _used;
+
+    /** Next slot the clock hand will examine. */
+    private int _hand;
+
+    /** Open-addressed hash index from keys to slots: the key in each
+     *  bucket. */
+    private long[] _bucketKeys;
+
+    /** The slot in each bucket, or -1 if the bucket is empty. */
+    private int[] _bucketSlots;
+
+    /** Identifier for the next new configuration. */
+    private int _nextConfiguration;
+
+    /** Identifiers of the configurations I remember, least recently
+     *  used first. */
+    private final LinkedHashMap<String, Integer> _configurations =
+        new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Integer> eldest) {
+                return size() > MAX_CONFIGURATIONS;
+            }
+        };
+
+}
@@ -0,0 +1,113 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author Kelvin Mo
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a table of SIZE indices rotated by K. */
+    private int[] rotation(int size, int k) {
+        int[] table = new int[size];
+        for (int c = 0; c < size; c++) {
+            table[c] = (c + k) % size;
+        }
+        return table;
+    }
+
+    @Test
+    public void testFindAndMap() {
+        KeystreamCache cache = new KeystreamCache(26, 1 << 20);
+        assertEquals(-1, cache.find(7));
+        int slot = cache.insert(7, rotation(26, 3));
+        assertEquals(slot, cache.find(7));
+        assertEquals(3, cache.map(slot, 0));
+        assertEquals(2, cache.map(slot, 25));
+        assertEquals(1, cache.entries());
+    }
+
+    @Test
+    public void testEviction() {
+        KeystreamCache cache = new KeystreamCache(26, 1);
+        assertEquals(1, cache.capacity());
+        cache.insert(1, rotation(26, 1));
+        int slot = cache.insert(2, rotation(26, 2));
+        assertEquals(-1, cache.find(1));
+        assertEquals(slot, cache.find(2));
+        assertEquals(2, cache.map(slot, 0));
+        assertEquals(1, cache.entries());
+    }
+
+    @Test
+    public void testManyKeys() {
+        KeystreamCache cache = new KeystreamCache(300, 100 * 700);
+        int capacity = cache.capacity();
+        for (long key = 0; key < 5 * capacity; key += 1) {
+            if (cache.find(key) < 0) {
+                cache.insert(key, rotation(300, (int) (key % 300)));
+            }
+        }
+        int found = 0;
+        for (long key = 0; key < 5 * capacity; key += 1) {
+            int slot = cache.find(key);
+            if (slot >= 0) {
+                found += 1;
+                assertEquals((int) (key % 300), cache.map(slot, 0));
+            }
+        }
+        assertEquals(capacity, found);
+    }
+
+    @Test
+    public void testGrowsOnDemand() {
+        KeystreamCache cache = new KeystreamCache(26, 1L << 30);
+        assertTrue(cache.capacity() > 10 * KeystreamCache.INITIAL_ENTRIES);
+        assertEquals(KeystreamCache.INITIAL_ENTRIES, cache.allocated());
+        int n = 5 * KeystreamCache.INITIAL_ENTRIES;
+        for (long key = 0; key < n; key += 1) {
+            cache.insert(key * 17576, rotation(26, (int) (key % 26)));
+        }
+        assertEquals(n, cache.entries());
+        assertTrue(cache.allocated() < 2 * n);
+        for (long key = 0; key < n; key += 1) {
+            int slot = cache.find(key * 17576);
+            assertTrue(slot >= 0);
+            assertEquals((int) (key % 26), cache.map(slot, 0));
+        }
+    }
+
+    @Test
+    public void testConfigurations() {
+        KeystreamCache cache = new KeystreamCache(26, 1 << 20);
+        int a = cache.configuration("B Beta III IV I");
+        int b = cache.configuration("B Gamma III IV I");
+        assertTrue(a != b);
+        assertEquals(a, cache.configuration("B Beta III IV I"));
+    }
+
+    @Test
+    public void testConfigurationsBounded() {
+        KeystreamCache cache = new KeystreamCache(26, 1 << 20);
+        int first = cache.configuration("config 0");
+        for (int i = 1; i <= 2 * KeystreamCache.MAX_CONFIGURATIONS; i++) {
+            cache.configuration("config " + i);
+            cache.configuration("config 0");
+        }
+        assertEquals(KeystreamCache.MAX_CONFIGURATIONS,
+                     cache.configurations());
+        assertEquals(first, cache.configuration("config 0"));
+        int forgotten = cache.configuration("config 1");
+        assertTrue(forgotten > 2 * KeystreamCache.MAX_CONFIGURATIONS);
+        assertEquals(KeystreamCache.MAX_CONFIGURATIONS,
+                     cache.configurations());
+    }
+
+}
@@ -0,0 +1,238 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Runs many copies of one CompiledMachine at once, each at its own rotor
+ *  settings, over the same input: for example, to try many candidate
+ *  start positions against one ciphertext.
+ *
+ *  The copies are lanes of a struct-of-arrays layout.  The setting of
+ *  each slot is an int[] across lanes, the stepping rule of
+ *  CompiledMachine.advance is applied slot by slot as lane-wise compares,
+ *  and each rotor is applied to all lanes as a table gather, so every
+ *  inner loop runs over lanes with no branches that depend on the lane.
+ *  Rotors of alphabets too large to have precomputed tables, and
+ *  machines with no moving rotors, are applied one lane at a time.
+ *
+ *  The gathers are plain loops rather than IntVector gathers from the
+ *  incubating jdk.incubator.vector module.  At KeyRecovery's 64 lanes
+ *  the vector gathers were no faster once warm, and --recover ran at
+ *  half the rate, since its runs are too short to repay their warm-up.
+ *  @author Kelvin Mo
+ */
+final class LaneMachine {
+
+    /** A machine with LANES lanes running copies of MACHINE, all
+     *  initially at its start settings. */
+    LaneMachine(CompiledMachine machine, int lanes) {
+        if (lanes <= 0) {
+            throw error("Number of lanes must be positive.");
+        }
+        int numRotors = machine.numRotors();
+        _machine = machine;
+        _lanes = lanes;
+        _size = machine.alphabet().size();
+        _first = machine.numFixed();
+        _last = numRotors - 1;
+        _rotates = new boolean[numRotors];
+        _notches = new boolean[numRotors][];
+        _forward = new int[numRotors][];
+        _backward = new int[numRotors][];
+        _settings = new int[numRotors][lanes];
+        _tables = _first <= _last;
+        for (int i = 0; i < numRotors; i++) {
+            _rotates[i] = machine.rotates(i);
+            _notches[i] = machine.notches(i);
+            _forward[i] = machine.forwardTable(i);
+            _backward[i] = machine.backwardTable(i);
+            if (i >= _first && _forward[i] == null) {
+                _tables = false;
+            }
+        }
+        _core = machine.core();
+        _plugboard = machine.plugboard();
+        _entry = machine.entry();
+        _exit = machine.exit();
+        _carry = new boolean[lanes];
+        _values = new int[lanes];
+        _laneSettings = new int[numRotors];
+        int[] start = machine.startSettings();
+        for (int lane = 0; lane < lanes; lane++) {
+            set(lane, start);
+        }
+    }
+
+    /** Return the number of lanes I have. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return the machine each lane runs. */
+    CompiledMachine machine() {
+        return _machine;
+    }
+
+    /** Set the settings of lane LANE to SETTINGS, one per slot. */
+    void set(int lane, int[] settings) {
+        if (settings.length != _settings.length) {
+            throw error("Number of settings does not match.");
+        }
+        for (int i = 0; i < settings.length; i++) {
+            _settings[i][lane] = settings[i];
+        }
+    }
+
+    /** Return the current setting of slot K in lane LANE. */
+    int setting(int lane, int k) {
+        return _settings[k][lane];
+    }
+
+    /** Convert the LEN indices of IN starting at 0 in every lane, storing
+     *  lane L's results in OUT[L][0 .. LEN - 1], and advancing every
+     *  lane's settings accordingly. */
+    void convert(int[] in, int len, int[][] out) {
+        int[] values = _values;
+        for (int t = 0; t < len; t++) {
+            advance();
+            int c = in[t];
+            if (!_tables) {
+                for (int lane = 0; lane < _lanes; lane++) {
+                    for (int i = 0; i < _laneSettings.length; i++) {
+                        _laneSettings[i] = _settings[i][lane];
+                    }
+                    out[lane][t] = _machine.apply(c, _laneSettings);
+                }
+                continue;
+            }
+            if (_entry != null) {
+                gather(_entry, _settings[_last], c, values);
+            } else {
+                gather(_forward[_last], _settings[_last], _plugboard[c],
+                       values);
+            }
+            for (int i = _last - 1; i >= _first; i--) {
+                gather(_forward[i], _settings[i], values);
+            }
+            int[] core = _core;
+            for (int lane = 0; lane < _lanes; lane++) {
+                values[lane] = core[values[lane]];
+            }
+            for (int i = _first; i < _last; i++) {
+                gather(_backward[i], _settings[i], values);
+            }
+            int[] exit = _exit != null ? _exit : _backward[_last];
+            int[] fast = _settings[_last];
+            int n = _size;
+            for (int lane = 0; lane < _lanes; lane++) {
+                out[lane][t] = exit[fast[lane] * n + values[lane]];
+            }
+            if (_exit == null) {
+                int[] plugboard = _plugboard;
+                for (int lane = 0; lane < _lanes; lane++) {
+                    out[lane][t] = plugboard[out[lane][t]];
+                }
+            }
+        }
+    }
+
+    /** Advance every lane as one keypress would. */
+    private void advance() {
+        boolean[] carry = _carry;
+        int n = _size;
+        for (int i = 1; i < _last; i++) {
+            if (!_rotates[i]) {
+                continue;
+            }
+            boolean[] right = _notches[i + 1], own = _notches[i];
+            int[] next = _settings[i + 1], here = _settings[i];
+            boolean doubleSteps = i > 1 && _rotates[i - 1];
+            for (int lane = 0; lane < _lanes; lane++) {
+                carry[lane] = right[next[lane]]
+                    || (doubleSteps && own[here[lane]]);
+            }
+            for (int lane = 0; lane < _lanes; lane++) {
+                int p = here[lane] + (carry[lane] ? 1 : 0);
+                here[lane] = p == n ? 0 : p;
+            }
+        }
+        if (_rotates[_last]) {
+            int[] fast = _settings[_last];
+            for (int lane = 0; lane < _lanes; lane++) {
+                int p = fast[lane] + 1;
+                fast[lane] = p == n ? 0 : p;
+            }
+        }
+    }
+
+    /** Set each VALUES[L] to TABLE[SETTINGS[L] * size + C]. */
+    private void gather(int[] table, int[] settings, int c, int[] values) {
+        int n = _size;
+        for (int lane = 0; lane < _lanes; lane++) {
+            values[lane] = table[settings[lane] * n + c];
+        }
+    }
+
+    /** Replace each VALUES[L] by TABLE[SETTINGS[L] * size + VALUES[L]]. */
+    private void gather(int[] table, int[] settings, int[] values) {
+        int n = _size;
+        for (int lane = 0; lane < _lanes; lane++) {
+            values[lane] = table[settings[lane] * n + values[lane]];
+        }
+    }
+
+    /** The machine each lane runs. */
+    private final CompiledMachine _machine;
+
+    /** Number of lanes. */
+    private final int _lanes;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** First slot that is not folded into _core. */
+    private final int _first;
+
+    /** Slot of the fast rotor. */
+    private final int _last;
+
+    /** True for each slot whose rotor rotates. */
+    private final boolean[] _rotates;
+
+    /** For each slot, true at each setting at a notch. */
+    private final boolean[][] _notches;
+
+    /** Forward conversion table of each slot's rotor, or null. */
+    private final int[][] _forward;
+
+    /** Backward conversion table of each slot's rotor, or null. */
+    private final int[][] _backward;
+
+    /** True iff some slot is not folded into _core and every such slot
+     *  has tables. */
+    private boolean _tables;
+
+    /** Combined permutation of the folded slots. */
+    private final int[] _core;
+
+    /** Plugboard image of each index. */
+    private final int[] _plugboard;
+
+    /** Plugboard folded into the fast rotor's forward table, or null. */
+    private final int[] _entry;
+
+    /** Fast rotor's backward table folded into the plugboard, or null. */
+    private final int[] _exit;
+
+    /** Setting of each slot, by lane. */
+    private final int[][] _settings;
+
+    /** Whether each lane's rotor in the current slot advances. */
+    private final boolean[] _carry;
+
+    /** Value passing through the rotors, by lane. */
+    private final int[] _values;
+
+    /** Scratch settings of one lane. */
+    private final int[] _laneSettings;
+
+}
@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LaneMachine class.
+ *  @author Kelvin Mo
+ */
+public class LaneMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    /** Check that every lane of a LaneMachine for MACH, at random
+     *  settings drawn from RANDOM, matches a cursor. */
+    private void checkLanes(Machine mach, Random random) {
+        CompiledMachine compiled = mach.compile();
+        int n = mach.alphabet().size();
+        LaneMachine lanes = new LaneMachine(compiled, 7);
+        int[][] starts = new int[lanes.lanes()][mach.numRotors()];
+        for (int lane = 0; lane < lanes.lanes(); lane++) {
+            for (int k = 1; k < starts[lane].length; k++) {
+                starts[lane][k] = random.nextInt(n);
+            }
+            lanes.set(lane, starts[lane]);
+        }
+        int[] in = new int[2000];
+        for (int t = 0; t < in.length; t++) {
+            in[t] = random.nextInt(n);
+        }
+        int[][] out = new int[lanes.lanes()][in.length];
+        lanes.convert(in, in.length, out);
+        int[] expected = new int[in.length];
+        for (int lane = 0; lane < lanes.lanes(); lane++) {
+            MachineCursor cursor = compiled.cursor();
+            cursor.set(starts[lane]);
+            cursor.convert(in, 0, in.length, expected);
+            assertArrayEquals(expected, out[lane]);
+        }
+    }
+
+    @Test
+    public void testMatchesCursors() {
+        Random random = new Random(181);
+        Machine mach = TestUtils.naval();
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        for (String board : new String[] { "", "(HQ) (EX) (IP) (TR)" }) {
+            mach.setPlugboard(new Permutation(board, mach.alphabet()));
+            checkLanes(mach, random);
+        }
+        mach.insertRotors(new String[] { "C", "Gamma", "V", "II", "I" });
+        mach.setPlugboard(new Permutation("(AZ)", mach.alphabet()));
+        checkLanes(mach, random);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNoLanes() {
+        Machine mach = TestUtils.naval();
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        mach.setPlugboard(new Permutation("", mach.alphabet()));
+        new LaneMachine(mach.compile(), 0);
+    }
+
+    @Test
+    public void testNoPawls() {
+        Machine mach =
+            new ConfigParser("ABCD 3 0 I N (ABCD) II N (AC) R R (AB) (CD)")
+            .parse();
+        Main.setUp(mach, "* R II I AA");
+        CompiledMachine compiled = mach.compile();
+        LaneMachine lanes = new LaneMachine(compiled, 3);
+        int[] in = { 0, 1, 2, 3 };
+        int[][] out = new int[lanes.lanes()][in.length];
+        lanes.convert(in, in.length, out);
+        assertEquals("BADC", mach.convert("ABCD"));
+        int[] expected = { 1, 0, 3, 2 };
+        for (int lane = 0; lane < lanes.lanes(); lane++) {
+            assertArrayEquals(expected, out[lane]);
+        }
+        checkLanes(mach, new Random(18));
+    }
+
+    @Test
+    public void testNoPawlsWideAlphabet() {
+        int n = Rotor.TABLE_LIMIT + 44;
+        StringBuilder config = new StringBuilder();
+        for (int c = 0; c < n; c++) {
+            config.append((char) (0x100 + c));
+        }
+        config.append(" 3 0 I N (");
+        for (int c = 0; c < n; c++) {
+            config.append((char) (0x100 + (c * 7 % n)));
+        }
+        config.append(") II N (");
+        config.append((char) 0x100).append((char) 0x101).append(')');
+        config.append(" R R");
+        for (int c = 0; c < n; c += 2) {
+            config.append(" (").append((char) (0x100 + c))
+                .append((char) (0x101 + c)).append(')');
+        }
+        Machine mach = new ConfigParser(config.toString()).parse();
+        mach.insertRotors(new String[] { "R", "II", "I" });
+        mach.setPlugboard(new Permutation("", mach.alphabet()));
+        checkLanes(mach, new Random(19));
+    }
+
+}
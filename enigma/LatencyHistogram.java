@@ -0,0 +1,102 @@
+package enigma;
+
+/** A histogram of non-negative long values, such as latencies in
+ *  nanoseconds, laid out like an HdrHistogram: values below 2**SUB_BITS
+ *  are counted exactly, and larger ones in buckets each 1/2**(SUB_BITS -
+ *  1) the width of their power of two, so that any value is known to
+ *  within about 6%.  The buckets are allocated once, and recording a
+ *  value is a few shifts and an array increment.
+ *  @author Kelvin Mo
+ */
+class LatencyHistogram {
+
+    /** Number of bits of each value kept exactly. */
+    static final int SUB_BITS = 5;
+
+    /** Number of buckets in each power of two above 2**SUB_BITS. */
+    private static final int HALF = 1 << (SUB_BITS - 1);
+
+    /** An empty histogram. */
+    LatencyHistogram() {
+        _counts = new long[index(Long.MAX_VALUE) + 1];
+    }
+
+    /** Count VALUE, treating a negative VALUE as 0. */
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        _counts[index(value)] += 1;
+        _count += 1;
+        _total += value;
+        if (value > _max) {
+            _max = value;
+        }
+    }
+
+    /** Return the number of values recorded. */
+    long count() {
+        return _count;
+    }
+
+    /** Return the largest value recorded, or 0 if there are none. */
+    long max() {
+        return _max;
+    }
+
+    /** Return the mean of the values recorded, or 0 if there are none. */
+    double mean() {
+        return _count == 0 ? 0 : (double) _total / _count;
+    }
+
+    /** Return an upper bound on the smallest value that is at least as
+     *  large as the fraction FRACTION of the values recorded, or 0 if
+     *  there are none.  The bound is the top of that value's bucket, or
+     *  max() if that is smaller. */
+    long percentile(double fraction) {
+        if (_count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * _count));
+        long seen = 0;
+        for (int i = 0; i < _counts.length; i++) {
+            seen += _counts[i];
+            if (seen >= rank) {
+                return Math.min(_max, highest(i));
+            }
+        }
+        return _max;
+    }
+
+    /** Return the index of the bucket holding VALUE >= 0. */
+    static int index(long value) {
+        if (value < 2 * HALF) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    /** Return the largest value in bucket INDEX. */
+    static long highest(int index) {
+        if (index < 2 * HALF) {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long sub = index % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /** Number of values in each bucket. */
+    private final long[] _counts;
+
+    /** Number of values recorded. */
+    private long _count;
+
+    /** Sum of the values recorded. */
+    private long _total;
+
+    /** Largest value recorded. */
+    private long _max;
+
+}
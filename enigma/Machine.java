@@ -1,5 +1,7 @@
 package enigma;
 
+import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 
 import static enigma.EnigmaException.*;
@@ -7,7 +9,7 @@ import static enigma.EnigmaException.*;
 /** Class that represents a complete enigma machine.
  *  @author Kelvin Mo
  */
-class Machine {
+class Machine implements CharConverter {
 
     /** Number of rotors. */
     private int numOfRotors;
@@ -26,9 +28,23 @@ class Machine {
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
-     *  available rotors. */
+     *  available rotors, each over an alphabet of the size of ALPHA.
+     *  Those, and the checks made as each rotor was built (that its
+     *  permutation is a bijection, its notches in its alphabet, and, for
+     *  a reflector, that no character maps to itself), are all the
+     *  checks made of the configuration; the per-character paths that
+     *  convert with it check nothing but their input. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        if (numRotors <= 1 || pawls < 0 || pawls >= numRotors) {
+            throw error("Bad numbers of rotor slots and pawls.");
+        }
+        for (Rotor rotor : allRotors) {
+            if (rotor.size() != alpha.size()) {
+                throw error("Rotor %s does not match the alphabet.",
+                            rotor.name());
+            }
+        }
         _alphabet = alpha;
         this.numOfRotors = numRotors;
         this.numPawls = pawls;
@@ -36,6 +52,37 @@ class Machine {
         this.availableRotors = new Rotor[numRotors];
     }
 
+    /** Return a machine with my alphabet, rotors, settings, and plugboard
+     *  whose rotors move independently of mine.  Its available rotors are
+     *  copies of the rotors in my slots, and it does not trace. */
+    Machine copy() {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        for (Rotor rotor : this.availableRotors) {
+            rotors.add(rotor.copy());
+        }
+        Machine result = new Machine(_alphabet, this.numOfRotors,
+                                     this.numPawls, rotors);
+        result.availableRotors = rotors.toArray(new Rotor[0]);
+        result.board = this.board;
+        result._numFixed = _numFixed;
+        result._core = _core;
+        result._entry = _entry;
+        result._exit = _exit;
+        return result;
+    }
+
+    /** Return an immutable snapshot of my alphabet, rotor wiring, current
+     *  settings, and plugboard that converts exactly as I would from my
+     *  current state. */
+    CompiledMachine compile() {
+        int[] settings = new int[this.numOfRotors];
+        for (int i = 0; i < this.numOfRotors; i++) {
+            settings[i] = getRotor(i).setting();
+        }
+        return new CompiledMachine(_alphabet, this.availableRotors, settings,
+                                   this.board);
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return this.numOfRotors;
@@ -57,37 +104,100 @@ class Machine {
         return _alphabet;
     }
 
+    /** Return all the rotors available to me, whether or not they are in
+     *  a slot. */
+    Rotor[] allRotors() {
+        Rotor[] result = new Rotor[this.totalRotors.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (Rotor) this.totalRotors[i];
+        }
+        return result;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
-     *  available rotors (ROTORS[0] names the reflector).
+     *  available rotors (ROTORS[0] names the reflector), precomputing
+     *  their per-setting conversion tables.
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
         if (rotors.length != this.numOfRotors) {
             throw new EnigmaException("Number of rotors does not match.");
         }
+        Rotor[] inserted = new Rotor[this.numOfRotors];
         for (int i = 0; i < this.totalRotors.length; i++) {
             for (int j = 0; j < rotors.length; j++) {
                 String rotorName = ((Rotor) this.totalRotors[i]).name();
                 if ((rotors[j].toString()).equals(rotorName)) {
-                    this.availableRotors[j] = (Rotor) this.totalRotors[i];
+                    inserted[j] = (Rotor) this.totalRotors[i];
+                    inserted[j].precompute();
                 }
             }
         }
+        for (int j = 0; j < inserted.length; j++) {
+            if (inserted[j] == null) {
+                throw error("Rotor %s not found.", rotors[j]);
+            }
+        }
+        this.availableRotors = inserted;
+        _entry = _exit = null;
+        foldFixedRotors();
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        if (setting.length() != this.numOfRotors - 1) {
+        int[] codePoints = setting.codePoints().toArray();
+        if (codePoints.length != this.numOfRotors - 1) {
             throw new EnigmaException("Setting does not match numRotors()-1.");
         }
         for (int i = 1; i < this.numOfRotors; i++) {
-            if (!alphabet().contains(setting.charAt(i - 1))) {
+            int k = alphabet().indexOf(codePoints[i - 1]);
+            if (k < 0) {
                 throw new EnigmaException("Setting not contained in alphabet.");
-            } else {
-                this.availableRotors[i].set(setting.charAt(i - 1));
             }
+            this.availableRotors[i].set(k);
+        }
+        foldFixedRotors();
+    }
+
+    /** Return the number of leading slots of ROTORS, starting with the
+     *  reflector, whose rotors do not rotate. */
+    static int numFixed(Rotor[] rotors) {
+        int k = 0;
+        while (k < rotors.length && !rotors[k].rotates()) {
+            k += 1;
+        }
+        return k;
+    }
+
+    /** Return the permutation, as a table of indices, performed by the
+     *  first COUNT slots of ROTORS at SETTINGS: forward through slots
+     *  COUNT - 1 .. 0 and back through slots 1 .. COUNT - 1. */
+    static int[] foldRotors(Rotor[] rotors, int[] settings, int count) {
+        int[] core = new int[rotors[0].size()];
+        for (int c = 0; c < core.length; c++) {
+            int result = c;
+            for (int i = count - 1; i >= 0; i--) {
+                result = rotors[i].convertForward(result, settings[i]);
+            }
+            for (int i = 1; i < count; i++) {
+                result = rotors[i].convertBackward(result, settings[i]);
+            }
+            core[c] = result;
         }
+        return core;
+    }
+
+    /** Fold the reflector and the non-rotating rotors next to it, which
+     *  keep their settings while a message runs, into _core. */
+    private void foldFixedRotors() {
+        int[] settings = new int[this.numOfRotors];
+        for (int i = 0; i < this.numOfRotors; i++) {
+            settings[i] = this.availableRotors[i].setting();
+        }
+        _numFixed = numFixed(this.availableRotors);
+        _core = foldRotors(this.availableRotors, settings, _numFixed);
+        _cacheConfig = STALE;
     }
 
     /** Return the current plugboard's permutation. */
@@ -98,6 +208,58 @@ class Machine {
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         this.board = plugboard;
+        _cacheConfig = STALE;
+        _entry = _exit = null;
+        Rotor[] rotors = this.availableRotors;
+        int last = rotors.length - 1;
+        if (plugboard != null && last >= _numFixed && rotors[last] != null) {
+            int[] images = new int[_alphabet.size()];
+            for (int c = 0; c < images.length; c++) {
+                images[c] = plugboard.permute(c);
+            }
+            int[][] folded = foldPlugboard(rotors[last], images);
+            if (folded != null) {
+                _entry = folded[0];
+                _exit = folded[1];
+            }
+        }
+    }
+
+    /** Return the tables {ENTRY, EXIT} that fold the plugboard whose
+     *  image of each index C is PLUGBOARD[C] into the conversions of FAST,
+     *  the fast rotor: ENTRY[S * N + C] is FAST's forward conversion at
+     *  setting S of the plugboard image of C, and EXIT[S * N + P] the
+     *  plugboard image of FAST's backward conversion of P at setting S,
+     *  where N is the alphabet size.  Returns null if the alphabet has
+     *  more than Rotor.TABLE_LIMIT characters, in which case folding
+     *  would not pay. */
+    static int[][] foldPlugboard(Rotor fast, int[] plugboard) {
+        int n = plugboard.length;
+        if (n > Rotor.TABLE_LIMIT) {
+            return null;
+        }
+        fast.precompute();
+        int[] entry = new int[n * n], exit = new int[n * n];
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < n; c++) {
+                entry[s * n + c] = fast.convertForward(plugboard[c], s);
+                exit[s * n + c] = plugboard[fast.convertBackward(c, s)];
+            }
+        }
+        return new int[][] { entry, exit };
+    }
+
+    /** Use CACHE, which must be for an alphabet the size of mine, to
+     *  remember my complete permutation at each rotor position I reach,
+     *  so that later visits to that position, in this or any later
+     *  message with the same rotors, fixed settings, and plugboard, take
+     *  one lookup.  A null CACHE turns caching off. */
+    void setKeystreamCache(KeystreamCache cache) {
+        if (cache != null && cache.size() != _alphabet.size()) {
+            throw error("keystream cache is for a different alphabet");
+        }
+        _cache = cache;
+        _cacheConfig = STALE;
     }
 
     /** Returns the result of converting the input character C (as an
@@ -105,75 +267,283 @@ class Machine {
      *  the machine. */
     int convert(int c) {
         advanceRotors();
-        if (Main.verbose()) {
-            System.err.printf("[");
-            for (int r = 1; r < numRotors(); r += 1) {
-                System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
-            }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+        if (_trace != TraceSink.NONE && _trace.sample()) {
+            return convertTraced(c);
         }
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
+        if (_cache != null) {
+            return convertCached(c);
+        }
+        if (_entry != null) {
+            return applyFolded(c);
+        }
+        return plugboard().permute(applyRotors(plugboard().permute(c)));
+    }
+
+    /** Return the result of converting the index C with my rotors at
+     *  their current settings, one step at a time, passing each setting
+     *  and step to my trace sink. */
+    private int convertTraced(int c) {
+        Rotor[] rotors = this.availableRotors;
+        int n = rotors.length;
+        int[] settings = new int[n];
+        for (int i = 0; i < n; i++) {
+            settings[i] = rotors[i].setting();
         }
-        c = applyRotors(c);
+        int[] path = new int[2 * n + 2];
+        int len = 0;
+        path[len++] = c;
         c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+        path[len++] = c;
+        for (int i = n - 1; i >= 0; i--) {
+            c = rotors[i].convertForward(c);
+            path[len++] = c;
+        }
+        for (int i = 1; i < n; i++) {
+            c = rotors[i].convertBackward(c);
+            path[len++] = c;
         }
+        c = plugboard().permute(c);
+        path[len++] = c;
+        _trace.trace(_alphabet, settings, path, len);
         return c;
     }
 
-    /** Advance all rotors to their next position. */
-    private void advanceRotors() {
-        boolean[] advance = new boolean[this.availableRotors.length];
-        advance[this.availableRotors.length - 1] = true;
-        for (int i = 1; i < this.availableRotors.length - 1; i++) {
-            if (this.availableRotors[i + 1].atNotch()) {
-                advance[i] = true;
+    /** Returns the result of converting C at my current rotor positions
+     *  through my keystream cache, filling in the cache entry for those
+     *  positions if it is missing. */
+    private int convertCached(int c) {
+        if (_cacheConfig == STALE) {
+            _cacheConfig = cacheConfiguration();
+        }
+        if (_cacheConfig == UNCACHEABLE) {
+            return plugboard().permute(applyRotors(plugboard().permute(c)));
+        }
+        Rotor[] rotors = this.availableRotors;
+        int size = _alphabet.size();
+        long key = 0;
+        for (int i = _numFixed; i < rotors.length; i++) {
+            key = key * size + rotors[i].setting();
+        }
+        key += (long) _cacheConfig << POSITION_BITS;
+        int slot = _cache.find(key);
+        if (slot < 0) {
+            if (_cacheScratch == null || _cacheScratch.length != size) {
+                _cacheScratch = new int[size];
+            }
+            for (int k = 0; k < size; k++) {
+                _cacheScratch[k] =
+                    plugboard().permute(applyRotors(plugboard().permute(k)));
             }
+            slot = _cache.insert(key, _cacheScratch);
         }
-        for (int i = 2; i < this.availableRotors.length; i++) {
-            if (this.availableRotors[i].atNotch()) {
-                if (this.availableRotors[i - 1].rotates()) {
-                    advance[i] = true;
-                }
+        return _cache.map(slot, c);
+    }
+
+    /** Return the keystream cache's identifier for my current rotors,
+     *  fixed settings, and plugboard, or UNCACHEABLE if my rotor
+     *  positions cannot be packed into a cache key. */
+    private int cacheConfiguration() {
+        Rotor[] rotors = this.availableRotors;
+        double positionBits = (rotors.length - _numFixed)
+            * Math.log(_alphabet.size()) / Math.log(2);
+        if (positionBits > POSITION_BITS - 1) {
+            return UNCACHEABLE;
+        }
+        StringBuilder signature = new StringBuilder();
+        for (int i = 0; i < rotors.length; i++) {
+            signature.append(rotors[i].name()).append(' ');
+        }
+        for (int i = 0; i < _numFixed; i++) {
+            signature.append(rotors[i].setting()).append(' ');
+        }
+        for (int k = 0; k < _alphabet.size(); k++) {
+            signature.append(plugboard().permute(k)).append(' ');
+        }
+        int id = _cache.configuration(signature.toString());
+        return id >= 1 << (63 - POSITION_BITS) ? UNCACHEABLE : id;
+    }
+
+    /** Advance all rotors to their next position.  Rotor #I advances if
+     *  it is the fast rotor, if Rotor #(I+1) is at a notch, or if it is
+     *  itself at a notch and Rotor #(I-1) rotates.  Deciding rotors from
+     *  left to right means each rotor is examined before it moves. */
+    void advanceRotors() {
+        Rotor[] rotors = this.availableRotors;
+        int last = rotors.length - 1;
+        for (int i = 1; i < last; i++) {
+            if (rotors[i + 1].atNotch()
+                || (i > 1 && rotors[i].atNotch() && rotors[i - 1].rotates())) {
+                rotors[i].advance();
             }
         }
-        for (int i = 0; i < advance.length; i++) {
-            if (advance[i]) {
-                this.availableRotors[i].advance();
+        rotors[last].advance();
+    }
+
+    /** Advance my rotors as N keypresses would, without converting
+     *  anything.  Takes time independent of N. */
+    void skip(long n) {
+        int size = _alphabet.size();
+        int[] settings = new int[this.numOfRotors];
+        boolean[][] notches = new boolean[this.numOfRotors][];
+        boolean[] rotates = new boolean[this.numOfRotors];
+        for (int i = 0; i < this.numOfRotors; i++) {
+            Rotor rotor = getRotor(i);
+            settings[i] = rotor.setting();
+            rotates[i] = rotor.rotates();
+            notches[i] = new boolean[size];
+            for (int p = 0; p < size; p++) {
+                notches[i][p] = rotor.atNotch(p);
             }
         }
+        Stepping.skip(settings, notches, rotates, size, n);
+        for (int i = 1; i < this.numOfRotors; i++) {
+            getRotor(i).set(settings[i]);
+        }
     }
 
     /** Return the result of applying the rotors to the character C (as an
      *  index in the range 0..alphabet size - 1). */
     private int applyRotors(int c) {
+        Rotor[] rotors = this.availableRotors;
         int result = c;
-        int length = this.availableRotors.length;
-        for (int i = length - 1; i >= 0; i--) {
-            result = getRotor(i).convertForward(result);
+        int length = rotors.length, first = _numFixed;
+        for (int i = length - 1; i >= first; i--) {
+            result = rotors[i].convertForward(result);
         }
-        for (int i = 1; i < length; i++) {
-            result = getRotor(i).convertBackward(result);
+        result = _core[result];
+        for (int i = first; i < length; i++) {
+            result = rotors[i].convertBackward(result);
         }
         return result;
     }
 
+    /** Return the result of passing C through my plugboard, rotors, and
+     *  reflector and back at their current settings, using the tables in
+     *  which _entry and _exit fold my plugboard into my fast rotor. */
+    private int applyFolded(int c) {
+        Rotor[] rotors = this.availableRotors;
+        int last = rotors.length - 1, first = _numFixed;
+        int base = rotors[last].setting() * _alphabet.size();
+        int result = _entry[base + c];
+        for (int i = last - 1; i >= first; i--) {
+            result = rotors[i].convertForward(result);
+        }
+        result = _core[result];
+        for (int i = first; i < last; i++) {
+            result = rotors[i].convertBackward(result);
+        }
+        return _exit[base + result];
+    }
+
+    /** Set my trace sink to SINK, which is given every keypress I make
+     *  from now on.  TraceSink.NONE turns tracing off. */
+    void setTraceSink(TraceSink sink) {
+        _trace = sink;
+    }
+
+    /** Return my trace sink. */
+    TraceSink traceSink() {
+        return _trace;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
-        for (int i = 0; i < msg.length(); i++) {
-            int num = _alphabet.toInt(msg.charAt(i));
-            result += _alphabet.toChar(convert(num));
+        if (!_alphabet.isBmp()) {
+            int[] codePoints = msg.codePoints().toArray();
+            for (int i = 0; i < codePoints.length; i++) {
+                int c = convert(_alphabet.codePointIndex(codePoints[i]));
+                codePoints[i] = _alphabet.toCodePoint(c);
+            }
+            return new String(codePoints, 0, codePoints.length);
+        }
+        char[] buf = msg.toCharArray();
+        convert(buf, 0, buf.length, buf);
+        return new String(buf);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, storing the
+     *  results at the same positions of OUT (which may be IN) and
+     *  updating the state of the rotors accordingly. */
+    @Override
+    public void convert(char[] in, int off, int len, char[] out) {
+        convert(in, off, len, out, off);
+    }
+
+    /** Convert the LEN characters of IN starting at INOFF, storing the
+     *  results in OUT starting at OUTOFF and updating the state of the
+     *  rotors accordingly. */
+    void convert(char[] in, int inOff, int len, char[] out, int outOff) {
+        Alphabet alpha = _alphabet;
+        if (!alpha.isBmp()) {
+            throw error("alphabet is not made of single chars");
+        }
+        for (int i = 0; i < len; i++) {
+            int num = alpha.toInt(in[inOff + i]);
+            out[outOff + i] = alpha.charAt(convert(num));
+        }
+    }
+
+    /** Convert the characters remaining in IN, or as many of them as
+     *  there is room for in OUT, putting the results into OUT.  Advances
+     *  the positions of both buffers past the characters handled. */
+    void convert(CharBuffer in, CharBuffer out) {
+        int len = Math.min(in.remaining(), out.remaining());
+        if (in.hasArray() && out.hasArray()) {
+            convert(in.array(), in.arrayOffset() + in.position(), len,
+                    out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+        } else {
+            if (!_alphabet.isBmp()) {
+                throw error("alphabet is not made of single chars");
+            }
+            for (int i = 0; i < len; i++) {
+                out.put(_alphabet.charAt(convert(_alphabet.toInt(in.get()))));
+            }
         }
-        return result;
     }
 
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
+    /** Marks _cacheConfig as needing to be recomputed. */
+    private static final int STALE = -1;
+
+    /** Marks _cacheConfig as a configuration the cache cannot hold. */
+    private static final int UNCACHEABLE = -2;
+
+    /** Number of low-order bits of a keystream cache key that hold the
+     *  rotor positions; the configuration identifier is above them. */
+    private static final int POSITION_BITS = 40;
+
+    /** Receives a record of my keypresses. */
+    private TraceSink _trace = TraceSink.NONE;
+
+    /** Keystream cache in use, or null. */
+    private KeystreamCache _cache;
+
+    /** Identifier of my configuration in _cache, STALE, or
+     *  UNCACHEABLE. */
+    private int _cacheConfig = STALE;
+
+    /** Buffer for filling in keystream cache entries. */
+    private int[] _cacheScratch;
+
+    /** Number of leading slots, the reflector first, whose rotors do not
+     *  rotate. */
+    private int _numFixed;
+
+    /** The combined permutation of the first _numFixed slots at their
+     *  current settings. */
+    private int[] _core;
+
+    /** My plugboard followed by my fast rotor's forward conversion, by
+     *  fast rotor setting (see foldPlugboard), or null if not folded. */
+    private int[] _entry;
+
+    /** My fast rotor's backward conversion followed by my plugboard, by
+     *  fast rotor setting, or null if not folded. */
+    private int[] _exit;
+
 }
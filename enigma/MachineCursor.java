@@ -0,0 +1,100 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The rotor settings of one session on a CompiledMachine.  A cursor is
+ *  small and cheap to create, and is meant to be used by one thread at a
+ *  time; any number of cursors may share the same CompiledMachine.
+ *  @author Kelvin Mo
+ */
+final class MachineCursor implements CharConverter {
+
+    /** A cursor on MACHINE positioned at SETTINGS, one per slot. */
+    MachineCursor(CompiledMachine machine, int[] settings) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _settings = settings.clone();
+    }
+
+    /** Return the machine I convert with. */
+    CompiledMachine machine() {
+        return _machine;
+    }
+
+    /** Return a cursor on my machine at my current settings. */
+    MachineCursor copy() {
+        return new MachineCursor(_machine, _settings);
+    }
+
+    /** Return the current setting of slot K. */
+    int setting(int k) {
+        return _settings[k];
+    }
+
+    /** Set my settings to SETTINGS, one per slot. */
+    void set(int[] settings) {
+        if (settings.length != _settings.length) {
+            throw error("Number of settings does not match.");
+        }
+        System.arraycopy(settings, 0, _settings, 0, settings.length);
+    }
+
+    /** Advance my settings as N keypresses would. */
+    void skip(long n) {
+        _machine.skip(_settings, n);
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  my settings. */
+    int convert(int c) {
+        _machine.advance(_settings);
+        return _machine.apply(c, _settings);
+    }
+
+    /** Convert the LEN indices of IN starting at OFF, storing the results
+     *  at the same positions of OUT (which may be IN). */
+    void convert(int[] in, int off, int len, int[] out) {
+        CompiledMachine machine = _machine;
+        int[] settings = _settings;
+        for (int i = off; i < off + len; i++) {
+            machine.advance(settings);
+            out[i] = machine.apply(in[i], settings);
+        }
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, storing the
+     *  results at the same positions of OUT (which may be IN). */
+    @Override
+    public void convert(char[] in, int off, int len, char[] out) {
+        CompiledMachine machine = _machine;
+        Alphabet alpha = _alphabet;
+        int[] settings = _settings;
+        if (!alpha.isBmp()) {
+            throw error("alphabet is not made of single chars");
+        }
+        for (int i = off; i < off + len; i++) {
+            int c = alpha.toInt(in[i]);
+            machine.advance(settings);
+            out[i] = alpha.charAt(machine.apply(c, settings));
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG, updating my settings
+     *  accordingly. */
+    String convert(String msg) {
+        char[] buf = msg.toCharArray();
+        convert(buf, 0, buf.length, buf);
+        return new String(buf);
+    }
+
+    /** The machine I convert with. */
+    private final CompiledMachine _machine;
+
+    /** My machine's alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Current setting of each slot. */
+    private final int[] _settings;
+
+}
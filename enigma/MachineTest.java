@@ -1,6 +1,14 @@
 package enigma;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -62,6 +70,35 @@ public class MachineTest {
         assertEquals(ROTORS.get("I"), mach.getRotor(4));
     }
 
+    @Test
+    public void testInvalidConfigurations() {
+        String[] bad = {
+            "ABCD 3 1 I MA (ABCD) II MB (AC) R R (AB)",
+            "ABCD 3 1 I ME (ABCD) II MB (AC) R R (AB) (CD)",
+            "ABCD 3 1 I MA (ABCD) II MB (ABC) (CD) R R (AB) (CD)",
+            "ABCD 3 3 I MA (ABCD) II MB (AC) R R (AB) (CD)",
+        };
+        new ConfigParser("ABCD 3 1 I MA (ABCD) II MB (AC) R R (AB) (CD)")
+            .parse();
+        for (String config : bad) {
+            try {
+                new ConfigParser(config).parse();
+                fail(config + " accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRotorOfOtherAlphabet() {
+        ArrayList<Rotor> rotors = new ArrayList<>(ROTORS.values());
+        rotors.add(new MovingRotor("X", new Permutation("(AB)",
+                                                        new Alphabet("AB")),
+                                   "A"));
+        new Machine(AZ, 5, 3, rotors);
+    }
+
     @Test
     public void testConvertChar() {
         Machine mach = mach1();
@@ -77,4 +114,462 @@ public class MachineTest {
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
 
+    @Test
+    public void testConvertArrays() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        char[] in = "..FROMHISSHOULDERHIAWATHA".toCharArray();
+        char[] out = new char[in.length];
+        mach.convert(in, 2, 10, out);
+        mach.convert(in, 12, in.length - 12, out);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                new String(out, 2, out.length - 2));
+    }
+
+    @Test
+    public void testConvertBuffers() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        CharBuffer in = CharBuffer.wrap("FROMHISSHOULDERHIAWATHA");
+        CharBuffer out = CharBuffer.allocate(10);
+        StringBuilder result = new StringBuilder();
+        while (in.hasRemaining()) {
+            mach.convert(in, out);
+            out.flip();
+            result.append(out);
+            out.clear();
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", result.toString());
+    }
+
+    /** Return a machine over AZ whose rotors are a reflector followed by
+     *  NUMFIXED fixed rotors and a moving rotor with each of NOTCHES. */
+    private Machine steppingMachine(int numFixed, String... notches) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[1 + numFixed + notches.length];
+        names[0] = "B";
+        rotors.add(new Reflector("B",
+                new Permutation(TestUtils.NAVALA.get("B"), AZ)));
+        for (int i = 1; i <= numFixed; i += 1) {
+            names[i] = "F" + i;
+            rotors.add(new FixedRotor(names[i],
+                    new Permutation(TestUtils.NAVALA.get("Beta"), AZ)));
+        }
+        for (int i = 0; i < notches.length; i += 1) {
+            names[1 + numFixed + i] = "M" + i;
+            rotors.add(new MovingRotor("M" + i,
+                    new Permutation(TestUtils.NAVALA.get("I"), AZ),
+                    notches[i]));
+        }
+        Machine mach = new Machine(AZ, names.length, notches.length,
+                                   rotors);
+        mach.insertRotors(names);
+        mach.setPlugboard(new Permutation("", AZ));
+        return mach;
+    }
+
+    /** Return the settings of MACH's rotors as a string. */
+    private String settings(Machine mach) {
+        String result = "";
+        for (int i = 1; i < mach.numRotors(); i += 1) {
+            result += AZ.toChar(mach.getRotor(i).setting());
+        }
+        return result;
+    }
+
+    @Test
+    public void testSkipMatchesStepping() {
+        Random random = new Random(61);
+        String[][] configs = {
+            { "Q", "E", "V" }, { "Z", "Z", "Z" }, { "AB", "ABC", "MZ" },
+            { "AEIMQUY", "BDFH", "C" }, { "", "Q", "E" }, { "J", "ZM", "" },
+            { "Q", "E", "V", "J" },
+        };
+        for (String[] notches : configs) {
+            for (int numFixed = 0; numFixed <= 1; numFixed += 1) {
+                Machine stepped = steppingMachine(numFixed, notches);
+                Machine skipped = steppingMachine(numFixed, notches);
+                String start = "";
+                for (int i = 1; i < stepped.numRotors(); i += 1) {
+                    start += AZ.toChar(random.nextInt(26));
+                }
+                stepped.setRotors(start);
+                skipped.setRotors(start);
+                for (int n = random.nextInt(3); n < 40000;
+                     n += 1 + random.nextInt(5000)) {
+                    skipped.setRotors(start);
+                    skipped.skip(n);
+                    stepped.setRotors(start);
+                    for (int k = 0; k < n; k += 1) {
+                        stepped.convert(0);
+                    }
+                    assertEquals(msg(start, n, notches),
+                                 settings(stepped), settings(skipped));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSkipComposes() {
+        Random random = new Random(62);
+        Machine whole = steppingMachine(1, "Q", "E", "V", "J");
+        Machine parts = steppingMachine(1, "Q", "E", "V", "J");
+        for (int trial = 0; trial < 20; trial += 1) {
+            long a = random.nextLong() >>> 24, b = random.nextLong() >>> 24;
+            whole.setRotors("AXLEB");
+            parts.setRotors("AXLEB");
+            whole.skip(a + b);
+            parts.skip(a);
+            parts.skip(b);
+            assertEquals(settings(whole), settings(parts));
+        }
+    }
+
+    @Test
+    public void testParallelConvert() {
+        Random random = new Random(63);
+        char[] msg = new char[200003];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = AZ.toChar(random.nextInt(26));
+        }
+        Machine sequential = mach1();
+        sequential.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR)", AZ));
+        Machine parallel = sequential.copy();
+        ParallelMachine engine =
+            new ParallelMachine(parallel, new ForkJoinPool(4), 4099);
+        String expected = sequential.convert(new String(msg));
+        assertEquals(expected, engine.convert(new String(msg)));
+        assertEquals(settings(sequential), settings(parallel));
+        assertEquals(sequential.convert("HIAWATHA"),
+                     parallel.convert("HIAWATHA"));
+    }
+
+    @Test
+    public void testParallelShortMessages() {
+        for (int chunk : new int[] { 4, 1000 }) {
+            Machine mach = mach1();
+            mach.setPlugboard(new Permutation("", AZ));
+            ParallelMachine engine =
+                new ParallelMachine(mach, new ForkJoinPool(2), chunk);
+            try {
+                engine.convert("HELLOWORLDHELLO1WORLD");
+                fail("converted a character outside the alphabet");
+            } catch (EnigmaException excp) {
+                assertEquals("AXLE", settings(mach));
+            }
+            Machine unplugged = mach.copy();
+            unplugged.setPlugboard(null);
+            engine = new ParallelMachine(unplugged, new ForkJoinPool(2),
+                                         chunk);
+            assertEquals(mach.convert("HELLOWORLD"),
+                         engine.convert("HELLOWORLD"));
+            assertEquals(settings(mach), settings(unplugged));
+        }
+    }
+
+    @Test
+    public void testCompiledCursors() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        CompiledMachine compiled = mach.compile();
+        MachineCursor first = compiled.cursor();
+        MachineCursor second = compiled.cursor();
+        assertEquals("QVPQSOKOIL", first.convert("FROMHISSHO"));
+        mach.setRotors("ZZZZ");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     second.convert("FROMHISSHOULDERHIAWATHA"));
+        assertEquals("PUBKJZPISFXDW", first.convert("ULDERHIAWATHA"));
+        MachineCursor third = compiled.cursor();
+        third.skip(10);
+        assertEquals("PUBKJZPISFXDW", third.convert("ULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testCompileLeavesRotors() {
+        Rotor[] rotors = new Rotor[5];
+        String[] names = { "B", "Beta", "III", "IV", "I" };
+        for (int i = 0; i < names.length; i += 1) {
+            Rotor like = ROTORS.get(names[i]);
+            Permutation perm =
+                new Permutation(TestUtils.NAVALA.get(names[i]), AZ);
+            if (like.rotates()) {
+                rotors[i] = new MovingRotor(names[i], perm, like.notches());
+            } else if (like.reflecting()) {
+                rotors[i] = new Reflector(names[i], perm);
+            } else {
+                rotors[i] = new FixedRotor(names[i], perm);
+            }
+        }
+        CompiledMachine compiled =
+            new CompiledMachine(AZ, rotors, new int[] { 0, 0, 23, 11, 4 },
+                                new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                                AZ));
+        for (Rotor rotor : rotors) {
+            assertFalse(rotor.precomputed());
+            assertEquals(0, rotor.setting());
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     compiled.cursor().convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testCompiledWideAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int c = 0; c < 400; c += 1) {
+            chars.append((char) (0x100 + c));
+        }
+        Alphabet wide = new Alphabet(chars.toString());
+        Random random = new Random(400);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = { "R", "F", "M1", "M2" };
+        for (String name : names) {
+            int[] images = new int[wide.size()];
+            for (int i = 0; i < images.length; i += 1) {
+                images[i] = i;
+            }
+            for (int i = images.length - 1; i > 0; i -= 1) {
+                int k = random.nextInt(i + 1);
+                int t = images[i];
+                images[i] = images[k];
+                images[k] = t;
+            }
+            if (name.equals("R")) {
+                int[] pairs = new int[images.length];
+                for (int i = 0; i < images.length; i += 2) {
+                    pairs[images[i]] = images[i + 1];
+                    pairs[images[i + 1]] = images[i];
+                }
+                images = pairs;
+            }
+            Permutation perm = new Permutation(images, wide);
+            if (name.equals("R")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (name.equals("F")) {
+                rotors.add(new FixedRotor(name, perm));
+            } else {
+                rotors.add(new MovingRotor(name, perm, chars.substring(7, 8)));
+            }
+        }
+        Machine mach = new Machine(wide, 4, 2, rotors);
+        mach.insertRotors(names);
+        mach.setRotors(chars.substring(3, 6));
+        mach.setPlugboard(new Permutation("", wide));
+        MachineCursor cursor = mach.compile().cursor();
+        for (int k = 0; k < 3000; k += 1) {
+            int c = random.nextInt(wide.size());
+            assertEquals(mach.convert(c), cursor.convert(c));
+        }
+    }
+
+    @Test
+    public void testKeystreamCache() {
+        Machine plain = mach1();
+        plain.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        Machine cached = plain.copy();
+        cached.setKeystreamCache(new KeystreamCache(AZ.size(), 1024));
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        for (int round = 0; round < 3; round += 1) {
+            plain.setRotors(SETTING1);
+            cached.setRotors(SETTING1);
+            assertEquals(plain.convert(msg), cached.convert(msg));
+        }
+        plain.setPlugboard(new Permutation("(AZ)", AZ));
+        cached.setPlugboard(new Permutation("(AZ)", AZ));
+        plain.setRotors(SETTING1);
+        cached.setRotors(SETTING1);
+        assertEquals(plain.convert(msg), cached.convert(msg));
+        plain.setRotors("BXLE");
+        cached.setRotors("BXLE");
+        assertEquals(plain.convert(msg), cached.convert(msg));
+    }
+
+    /** Return the result of converting C with MACH, advancing it first,
+     *  by applying its plugboard and each of its rotors in turn. */
+    private int slowConvert(Machine mach, int c) {
+        mach.skip(1);
+        int result = mach.plugboard().permute(c);
+        for (int i = mach.numRotors() - 1; i > 0; i--) {
+            result = mach.getRotor(i).convertForward(result);
+        }
+        result = mach.getRotor(0).convertForward(result);
+        for (int i = 1; i < mach.numRotors(); i++) {
+            result = mach.getRotor(i).convertBackward(result);
+        }
+        return mach.plugboard().permute(result);
+    }
+
+    @Test
+    public void testPlugboardFolding() {
+        Machine mach = mach1();
+        Machine slow = mach1().copy();
+        String[] boards = { "(HQ) (EX) (IP) (TR) (BY)", "", "(AZ) (MN)" };
+        Random random = new Random(61);
+        for (String board : boards) {
+            mach.setPlugboard(new Permutation(board, AZ));
+            slow.setPlugboard(new Permutation(board, AZ));
+            CompiledMachine compiled = mach.compile();
+            MachineCursor cursor = compiled.cursor();
+            for (int k = 0; k < 1000; k++) {
+                int c = random.nextInt(AZ.size());
+                int expected = slowConvert(slow, c);
+                assertEquals(expected, mach.convert(c));
+                assertEquals(expected, cursor.convert(c));
+            }
+        }
+    }
+
+    @Test
+    public void testTraceSinks() {
+        Machine plain = mach1();
+        plain.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        Machine traced = plain.copy();
+        ArrayList<String> records = new ArrayList<>();
+        traced.setTraceSink(new TraceSink() {
+            @Override
+            public boolean sample() {
+                return true;
+            }
+
+            @Override
+            public void trace(Alphabet alpha, int[] settings, int[] path,
+                              int len) {
+                StringBuilder record = new StringBuilder();
+                for (int setting : settings) {
+                    record.append(alpha.toChar(setting));
+                }
+                record.append(' ');
+                for (int i = 0; i < len; i++) {
+                    record.append(alpha.toChar(path[i]));
+                }
+                records.add(record.toString());
+            }
+        });
+        assertEquals(plain.convert("FROMHIS"), traced.convert("FROMHIS"));
+        assertEquals(7, records.size());
+        assertEquals("AAXLF FF", records.get(0).substring(0, 8));
+        assertEquals(12 + 6, records.get(0).length());
+        assertTrue(records.get(0).endsWith("Q"));
+        StringWriter json = new StringWriter();
+        traced.setTraceSink(new JsonTraceWriter(json, 3));
+        traced.setRotors(SETTING1);
+        plain.setRotors(SETTING1);
+        assertEquals(plain.convert("FROMHIS"), traced.convert("FROMHIS"));
+        traced.traceSink().flush();
+        String[] lines = json.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("{\"n\":0,\"settings\":\"AAXLF\""));
+        assertTrue(lines[1].startsWith("{\"n\":3,"));
+        assertTrue(lines[2].startsWith("{\"n\":6,"));
+        traced.setTraceSink(TraceSink.NONE);
+        assertEquals(plain.convert("HIAWATHA"), traced.convert("HIAWATHA"));
+    }
+
+    @Test
+    public void testCodePointAlphabet() {
+        Machine mach = emojiMachine();
+        Alphabet emoji = mach.alphabet();
+        Machine plain = mach1();
+        plain.setPlugboard(new Permutation("", AZ));
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        String expected = plain.convert(msg);
+        int[] result = mach.convert(emoji(msg, emoji)).codePoints()
+            .toArray();
+        assertEquals(expected.length(), result.length);
+        for (int i = 0; i < result.length; i += 1) {
+            assertEquals(AZ.toInt(expected.charAt(i)),
+                         emoji.codePointIndex(result[i]));
+        }
+    }
+
+    @Test
+    public void testCodePointTraces() {
+        Machine mach = emojiMachine();
+        Alphabet emoji = mach.alphabet();
+        Machine plain = mach1();
+        plain.setPlugboard(new Permutation("", AZ));
+        ByteArrayOutputStream verbose = new ByteArrayOutputStream();
+        ByteArrayOutputStream plainVerbose = new ByteArrayOutputStream();
+        mach.setTraceSink(new VerboseTrace(
+            new PrintStream(verbose, true, StandardCharsets.UTF_8)));
+        plain.setTraceSink(new VerboseTrace(
+            new PrintStream(plainVerbose, true, StandardCharsets.UTF_8)));
+        mach.convert(emoji("FROMHIS", emoji));
+        plain.convert("FROMHIS");
+        assertEquals(emoji(plainVerbose.toString(StandardCharsets.UTF_8),
+                           emoji),
+                     verbose.toString(StandardCharsets.UTF_8));
+        StringWriter json = new StringWriter();
+        StringWriter plainJson = new StringWriter();
+        mach.setTraceSink(new JsonTraceWriter(json, 2));
+        plain.setTraceSink(new JsonTraceWriter(plainJson, 2));
+        mach.convert(emoji("HIAWATHA", emoji));
+        plain.convert("HIAWATHA");
+        mach.traceSink().flush();
+        plain.traceSink().flush();
+        assertEquals(emoji(plainJson.toString(), emoji), json.toString());
+
+        RotorCatalog catalog = new RotorCatalog(mach);
+        int[] indices = catalog.indices(emoji("FROM", emoji));
+        assertArrayEquals(new int[] { 5, 17, 14, 12 }, indices);
+        int[] plugboard = { 1, 0, 2, 3, 5, 4 };
+        assertEquals("* B Beta III IV I "
+                     + emoji("AXLE (AB) (EF)", emoji),
+                     catalog.settingsLine(
+                         new String[] { "B", "Beta", "III", "IV", "I" },
+                         new int[] { 0, 0, 23, 11, 4 }, plugboard));
+    }
+
+    /** Return a machine like mach1() with the rotors B Beta III IV I at
+     *  SETTING1 and no plugboard, over an alphabet of 26 characters
+     *  outside the Basic Multilingual Plane that stand for A-Z. */
+    private Machine emojiMachine() {
+        StringBuilder chars = new StringBuilder();
+        for (int c = 0x1f600; c < 0x1f600 + 26; c += 1) {
+            chars.appendCodePoint(c);
+        }
+        Alphabet emoji = new Alphabet(chars.toString());
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = { "B", "Beta", "III", "IV", "I" };
+        for (String name : names) {
+            Rotor like = ROTORS.get(name);
+            Permutation perm =
+                new Permutation(emoji(TestUtils.NAVALA.get(name), emoji),
+                                emoji);
+            if (like.rotates()) {
+                rotors.add(new MovingRotor(name, perm,
+                                           emoji(like.notches(), emoji)));
+            } else if (like.reflecting()) {
+                rotors.add(new Reflector(name, perm));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        Machine mach = new Machine(emoji, 5, 3, rotors);
+        mach.insertRotors(names);
+        mach.setRotors(emoji(SETTING1, emoji));
+        mach.setPlugboard(new Permutation("", emoji));
+        return mach;
+    }
+
+    /** Return TEXT with each of the letters A-Z replaced by the
+     *  character of the same index in EMOJI. */
+    private static String emoji(String text, Alphabet emoji) {
+        StringBuilder result = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (AZ.contains(c)) {
+                result.appendCodePoint(emoji.toCodePoint(AZ.toInt(c)));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a description of a skip of N from START with NOTCHES. */
+    private String msg(String start, int n, String[] notches) {
+        return String.format("skip %d from %s with notches %s", n, start,
+                             String.join(",", notches));
+    }
+
 }
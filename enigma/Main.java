@@ -1,13 +1,29 @@
 package enigma;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
 
-import java.util.ArrayList;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
-import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 import ucb.util.CommandArgs;
 
@@ -25,19 +41,130 @@ public final class Main {
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
-     *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  standard output. With --verbose, each keypress is traced to the
+     *  standard error (see VerboseTrace). With --trace=FILE, one keypress
+     *  in every N (--trace-every=N, by default 1) is traced instead to
+     *  FILE as JSON lines (see JsonTraceWriter); neither may be used with
+     *  --server, --recover, --bombe, or --binary. With --stats, a summary
+     *  of where the time of the run went (see RunStats) is printed to the
+     *  standard error at the end. With --stream, messages are converted
+     *  in fixed-size chunks rather than a line at a time. With --mmap, INPUT
+     *  and OUTPUT are required and are memory-mapped; the alphabet must
+     *  then be ASCII. With --keystream-cache=MB, the complete permutation
+     *  at each rotor position reached is remembered, within MB megabytes,
+     *  across all messages. With --server=PORT or --server=PATH, there is
+     *  no INPUT or OUTPUT; instead an EnigmaServer converts what arrives
+     *  on TCP port PORT of the loopback interface, or on the Unix-domain
+     *  socket PATH, until the process is killed. With --recover, INPUT is
+     *  ciphertext (settings lines are ignored) whose settings are
+     *  unknown; the most likely settings line found by KeyRecovery is
+     *  printed, followed by the decryption. With --bombe=CRIB, INPUT is
+     *  likewise ciphertext, and a settings line is printed for each stop
+     *  of a Bombe run with CRIB at position N of the ciphertext
+     *  (--crib-at=N), or at every position where it could lie. With
+     *  --ngrams=CORPUS, --recover ranks plugboards by the n-gram
+     *  statistics of the text file CORPUS rather than by the index of
+     *  coincidence. With --config-cache=DIR, the machine CONFIG describes
+     *  is kept, compiled, in the directory DIR, and read from there
+     *  rather than parsed whenever CONFIG is unchanged. With
+     *  --binary=SETTINGS, INPUT is raw bytes, each converted as the
+     *  character whose index is its value by the machine CONFIG
+     *  describes (whose alphabet must have 256 characters) set up by the
+     *  settings line SETTINGS; see ByteMachine. With --generate=SEED,
+     *  CONFIG is not read but written: a configuration for --binary
+     *  with rotors generated from SEED. Exits normally
+     *  if there are no errors in the input; otherwise with code 1. */
     public static void main(String... args) {
         try {
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
+                new CommandArgs("--verbose --stats --stream --mmap "
+                                + "--keystream-cache=(\\d+) --server=(.+) "
+                                + "--recover --bombe=(.+) --crib-at=(\\d+) "
+                                + "--ngrams=(.+) --config-cache=(.+) "
+                                + "--trace=(.+) --trace-every=(\\d+) "
+                                + "--binary=(.+) --generate=(-?\\d+) "
+                                + "--=(.*){1,3}",
+                                args);
             if (!options.ok()) {
                 throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                            + "[--trace=FILE [--trace-every=N]] [--stats] "
+                            + "[--stream] "
+                            + "[--mmap] [--keystream-cache=MB] "
+                            + "[--config-cache=DIR] "
+                            + "[--server=PORT|PATH] "
+                            + "[--recover [--ngrams=CORPUS]] "
+                            + "[--bombe=CRIB [--crib-at=N]] "
+                            + "[--binary=SETTINGS] CONFIG "
+                            + "[INPUT [OUTPUT]] | "
+                            + "java enigma.Main --generate=SEED CONFIG");
+            }
+            if (options.contains("--generate")) {
+                generate(options.get("--"),
+                         Long.parseLong(options.getFirst("--generate")));
+                return;
             }
 
             _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            _stream = options.contains("--stream");
+            _mmap = options.contains("--mmap");
+            _recover = options.contains("--recover");
+            if (options.contains("--bombe")) {
+                _crib = options.getFirst("--bombe");
+                if (options.contains("--crib-at")) {
+                    _cribAt = Integer.parseInt(options.getFirst("--crib-at"));
+                }
+            }
+            if (options.contains("--config-cache")) {
+                _configCache = options.getFirst("--config-cache");
+            }
+            if (options.contains("--ngrams")) {
+                _ngrams = options.getFirst("--ngrams");
+            }
+            if (options.contains("--server")) {
+                _server = options.getFirst("--server");
+            }
+            if (options.contains("--binary")) {
+                _binary = options.getFirst("--binary");
+            }
+            if (options.contains("--keystream-cache")) {
+                String megabytes = options.getFirst("--keystream-cache");
+                if (megabytes.length() > 18
+                    || Long.parseLong(megabytes) > MAX_CACHE_MB) {
+                    throw error("--keystream-cache is at most %d MB",
+                                MAX_CACHE_MB);
+                }
+                _cacheBytes = Long.parseLong(megabytes) << 20;
+            }
+            if (options.contains("--stats")) {
+                _stats = new RunStats();
+            }
+            if ((_verbose || options.contains("--trace"))
+                && (_server != null || _recover || _crib != null
+                    || _binary != null)) {
+                throw error("--verbose and --trace cannot be used with "
+                            + "--server, --recover, --bombe, or --binary");
+            }
+            Main main = new Main(options.get("--"));
+            if (options.contains("--trace")) {
+                if (_verbose) {
+                    throw error("--verbose and --trace are exclusive");
+                }
+                int every = 1;
+                if (options.contains("--trace-every")) {
+                    every = Integer.parseInt(
+                        options.getFirst("--trace-every"));
+                }
+                _trace = new JsonTraceWriter(
+                    main.getWriter(options.getFirst("--trace")), every);
+            } else if (_verbose) {
+                _trace = new VerboseTrace(System.err);
+            }
+            try {
+                main.process();
+                _stats.report(System.err);
+            } finally {
+                _trace.flush();
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -48,7 +175,49 @@ public final class Main {
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        _config = getBytes(args.get(0));
+
+        if (_server != null) {
+            if (args.size() != 1) {
+                throw error("--server takes no INPUT or OUTPUT");
+            }
+            return;
+        }
+
+        if (_binary != null) {
+            if (args.size() > 1) {
+                _inputName = args.get(1);
+            }
+            if (args.size() > 2) {
+                _outputName = args.get(2);
+            }
+            return;
+        }
+
+        if (_mmap) {
+            if (args.size() != 3) {
+                throw error("--mmap requires INPUT and OUTPUT files");
+            }
+            _inputName = args.get(1);
+            _outputName = args.get(2);
+            return;
+        }
+
+        if (_stream) {
+            if (args.size() > 1) {
+                _reader = getReader(args.get(1));
+            } else {
+                _reader = new BufferedReader(new InputStreamReader(System.in),
+                                             MessageStream.CHUNK);
+            }
+            if (args.size() > 2) {
+                _writer = getWriter(args.get(2));
+            } else {
+                _writer = new BufferedWriter(new OutputStreamWriter(System.out),
+                                             MessageStream.CHUNK);
+            }
+            return;
+        }
 
         if (args.size() > 1) {
             _input = getInput(args.get(1));
@@ -63,6 +232,15 @@ public final class Main {
         }
     }
 
+    /** Return the contents of the file named NAME. */
+    private byte[] getBytes(String name) {
+        try {
+            return Files.readAllBytes(Paths.get(name));
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
@@ -81,21 +259,72 @@ public final class Main {
         }
     }
 
+    /** Return a buffered Reader reading from the file named NAME. */
+    private Reader getReader(String name) {
+        try {
+            return new BufferedReader(
+                new InputStreamReader(new FileInputStream(name)),
+                MessageStream.CHUNK);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a buffered Writer writing to the file named NAME. */
+    private Writer getWriter(String name) {
+        try {
+            return new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(name)),
+                MessageStream.CHUNK);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
+        if (_server != null) {
+            processServer();
+            return;
+        }
+        if (_recover) {
+            processRecover();
+            return;
+        }
+        if (_crib != null) {
+            processBombe();
+            return;
+        }
+        if (_binary != null) {
+            processBinary();
+            return;
+        }
+        if (_mmap) {
+            processMapped();
+            return;
+        }
+        if (_stream) {
+            processStream();
+            return;
+        }
         Machine mac = readConfig();
         String next = _input.nextLine();
         String result = "";
-        setUp(mac, next);
+        reconfigure(mac, next);
         while (_input.hasNext()) {
             String setup = _input.nextLine();
             if (setup.startsWith("*")) {
-                setUp(mac, setup);
+                reconfigure(mac, setup);
             } else {
-                result = mac.convert(setup.replaceAll(" ", ""));
+                String msg = setup.replaceAll(" ", "");
+                long start = _stats.clock();
+                result = mac.convert(msg);
+                _stats.converted(msg.length(), start);
+                start = _stats.clock();
                 printMessageLine(result);
+                _stats.wrote(start);
             }
         }
         if (!_input.hasNextLine()) {
@@ -105,63 +334,227 @@ public final class Main {
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Configure an Enigma machine from the contents of configuration
+     *  file _config and stream the messages in _reader through it in
+     *  chunks, sending the results to _writer. */
+    private void processStream() {
+        Machine mac = readConfig();
+        MessageStream stream =
+            new MessageStream(_stats.timed(mac),
+                              settings -> reconfigure(mac, settings),
+                              _writer, _stats);
         try {
-            String alpha = _config.next();
-            _alphabet = new Alphabet(alpha);
-            int numRotors, numPawls = 0;
-            if (_config.hasNextInt()) {
-                numRotors = _config.nextInt();
-            } else {
-                throw new EnigmaException("Does not contain arg numRotors.");
-            }
-            if (_config.hasNextInt()) {
-                numPawls = _config.nextInt();
-            } else {
-                throw new EnigmaException("Does not contain arg numPawls.");
+            stream.process(_reader);
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Search for the settings of the machine described by configuration
+     *  file _config under which the messages in _input were encrypted,
+     *  and print the best settings line and decryption to _output. */
+    private void processRecover() {
+        Machine mac = readConfig();
+        String cipher = readCiphertext();
+        KeyRecovery recovery;
+        if (_ngrams == null) {
+            recovery = new KeyRecovery(mac);
+        } else {
+            int size = mac.alphabet().size();
+            NgramScorer scorer;
+            try (Reader corpus = getReader(_ngrams)) {
+                scorer = new NgramScorer(mac.alphabet(), corpus);
+            } catch (IOException excp) {
+                throw error("could not read %s", _ngrams);
             }
-            ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
-            while (_config.hasNext()) {
-                allRotors.add(readRotor());
+            recovery = new KeyRecovery(mac, ForkJoinPool.commonPool(),
+                                       () -> new IndexOfCoincidence(size),
+                                       () -> scorer);
+        }
+        long start = System.nanoTime();
+        List<KeyRecovery.Candidate> found =
+            recovery.recover(recovery.catalog().indices(cipher),
+                             KeyRecovery.DEFAULT_KEEP);
+        reportRate(recovery.positionsTried(), start);
+        if (found.isEmpty()) {
+            throw error("no rotor order fits the configuration");
+        }
+        String settings = found.get(0).settingsLine(recovery.catalog());
+        setUp(mac, settings);
+        _output.println(settings);
+        printMessageLine(mac.convert(cipher));
+    }
+
+    /** Run a Bombe with crib _crib over the ciphertext in _input on the
+     *  machine described by configuration file _config, and print a
+     *  settings line for each stop to _output. */
+    private void processBombe() {
+        Machine mac = readConfig();
+        Bombe bombe = new Bombe(mac);
+        int[] cipher = bombe.catalog().indices(readCiphertext());
+        int[] crib = bombe.catalog().indices(_crib);
+        List<Integer> offsets =
+            _cribAt >= 0 ? List.of(_cribAt) : Bombe.offsets(cipher, crib);
+        long start = System.nanoTime();
+        List<Bombe.Stop> stops = bombe.search(cipher, crib, offsets);
+        reportRate(bombe.positionsTried(), start);
+        for (Bombe.Stop stop : stops) {
+            _output.println(stop.settingsLine(bombe.catalog()));
+        }
+    }
+
+    /** Return the letters of the message lines of _input, ignoring
+     *  settings lines and whitespace. */
+    private String readCiphertext() {
+        StringBuilder cipher = new StringBuilder();
+        while (_input.hasNextLine()) {
+            String line = _input.nextLine();
+            if (!line.startsWith("*")) {
+                cipher.append(line.replaceAll("\\s", ""));
             }
-            return new Machine(_alphabet, numRotors, numPawls, allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
         }
+        if (cipher.length() == 0) {
+            throw error("no ciphertext");
+        }
+        return cipher.toString();
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Report on the standard error that TRIED start positions were tried
+     *  since System.nanoTime() was START. */
+    private static void reportRate(long tried, long start) {
+        double seconds = (System.nanoTime() - start) * 1e-9;
+        System.err.printf("Tried %d positions in %.1f s "
+                          + "(%.0f positions/s)%n",
+                          tried, seconds, tried / seconds);
+    }
+
+    /** Configure an Enigma machine from the contents of configuration
+     *  file _config and serve it on the socket _server describes. */
+    private void processServer() {
+        Machine mac = readConfig();
+        EnigmaServer server;
         try {
-            String perm = "";
-            String first = _config.next();
-            String rotor = _config.next();
-            if (first == null || rotor == null) {
-                throw new EnigmaException("Missing arguments");
-            }
-            while (_config.hasNext("\\(.*")) {
-                perm += _config.next();
-            }
-            if (rotor.charAt(0) == 'M') {
-                return new MovingRotor(first,
-                        new Permutation(perm, _alphabet), rotor.substring(1));
-            } else if (rotor.equals("N")) {
-                return new FixedRotor(first, new Permutation(perm, _alphabet));
-            } else if (rotor.equals("R")) {
-                return new Reflector(first, new Permutation(perm, _alphabet));
-            } else {
-                throw new EnigmaException("No matching rotors.");
+            server = new EnigmaServer(mac, EnigmaServer.address(_server));
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException excp) {
+                return;
             }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+        }));
+        try {
+            System.err.printf("Listening on %s%n", server.address());
+            server.serve();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } finally {
+            try {
+                server.close();
+            } catch (IOException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+            }
+        }
+    }
+
+    /** Configure an Enigma machine from the contents of configuration
+     *  file _config and stream the memory-mapped file _inputName through
+     *  it, mapping the results into the file _outputName. */
+    private void processMapped() {
+        Machine mac = readConfig();
+        if (!MappedIO.isAscii(mac.alphabet())) {
+            throw error("--mmap requires an ASCII alphabet");
+        }
+        try (Writer output = new MappedIO.Output(_outputName)) {
+            MessageStream stream =
+                new MessageStream(_stats.timed(mac),
+                                  settings -> reconfigure(mac, settings),
+                                  output, _stats);
+            MappedIO.feed(_inputName, stream);
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Configure an Enigma machine from the contents of configuration
+     *  file _config and the settings line _binary, and pass the bytes of
+     *  the file _inputName (or the standard input) through it, writing
+     *  the results to the file _outputName (or the standard output). */
+    private void processBinary() {
+        Machine mac = readConfig();
+        reconfigure(mac, _binary);
+        ByteMachine bytes = new ByteMachine(mac.compile());
+        try (ReadableByteChannel in = _inputName == null
+                 ? Channels.newChannel(System.in)
+                 : FileChannel.open(Paths.get(_inputName),
+                                    StandardOpenOption.READ);
+             WritableByteChannel out = _outputName == null
+                 ? Channels.newChannel(System.out)
+                 : FileChannel.open(Paths.get(_outputName),
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            bytes.process(in, out, _stats);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Write the configuration ByteMachine.generate makes from SEED to
+     *  the file named by the only element of ARGS. */
+    private static void generate(List<String> args, long seed) {
+        if (args.size() != 1) {
+            throw error("--generate takes only CONFIG");
         }
+        String text = ByteMachine.generate(seed);
+        Charset charset = Charset.defaultCharset();
+        if (!charset.newEncoder().canEncode(text)) {
+            throw error("the default charset, %s, cannot encode a binary "
+                        + "configuration", charset);
+        }
+        try {
+            Files.write(Paths.get(args.get(0)), text.getBytes(charset));
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not write %s", args.get(0));
+        }
+    }
+
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _config, taken from the --config-cache directory if there is
+     *  one. */
+    private Machine readConfig() {
+        long start = _stats.clock();
+        Machine mac;
+        if (_configCache != null) {
+            mac = new ConfigCache(Paths.get(_configCache)).load(_config);
+        } else {
+            mac = new ConfigParser(new String(_config,
+                                              Charset.defaultCharset()))
+                .parse();
+        }
+        _stats.configParsed(start);
+        _alphabet = mac.alphabet();
+        mac.setTraceSink(_trace);
+        if (_cacheBytes > 0) {
+            mac.setKeystreamCache(
+                new KeystreamCache(_alphabet.size(), _cacheBytes));
+        }
+        return mac;
+    }
+
+    /** Set M according to SETTINGS as setUp does, recording the time
+     *  taken in the run statistics. */
+    private static void reconfigure(Machine M, String settings) {
+        long start = _stats.clock();
+        setUp(M, settings);
+        _stats.reconfigured(start);
     }
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+    static void setUp(Machine M, String settings) {
         int num = M.numRotors();
         String[] setting = settings.split("[ ]+");
         if (setting.length - 2 < num) {
@@ -187,33 +580,35 @@ public final class Main {
             throw new EnigmaException("Wrong rootor setup.");
         }
 
-        String board = "";
-        for (int i = num + 2; i < setting.length; i++) {
-            board += setting[i];
-        }
+        int cycles = num + 2;
         if (setting.length > num + 2 && !setting[num + 2].startsWith("(")) {
             M.setRotors(setting[num + 1] + " " + setting[num + 2]);
+            cycles += 1;
+        }
+        String board = "";
+        for (int i = cycles; i < setting.length; i++) {
+            board += setting[i];
         }
         M.setRotors(setting[num + 1]);
-        M.setPlugboard(new Permutation(board, _alphabet));
-    }
-
-    /** Return true iff verbose option specified. */
-    static boolean verbose() {
-        return _verbose;
+        M.setPlugboard(new Permutation(board, M.alphabet()));
     }
 
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
         msg = msg.trim();
-        for (int i = 0; i < msg.length(); i++) {
-            _output.print(msg.charAt(i));
-            if ((i + 1) % 5 == 0) {
-                _output.print(" ");
+        StringBuilder line = new StringBuilder(msg.length() * 6 / 5 + 1);
+        int count = 0;
+        for (int i = 0; i < msg.length();) {
+            int c = msg.codePointAt(i);
+            i += Character.charCount(c);
+            line.appendCodePoint(c);
+            count += 1;
+            if (count % 5 == 0) {
+                line.append(' ');
             }
         }
-        _output.println();
+        _output.println(line);
 
     }
 
@@ -223,12 +618,65 @@ public final class Main {
     /** Source of input messages. */
     private Scanner _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Contents of the machine configuration file. */
+    private byte[] _config;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
+    /** Source of input messages when streaming. */
+    private Reader _reader;
+
+    /** Destination of encoded/decoded messages when streaming. */
+    private Writer _writer;
+
+    /** Name of the input file when memory-mapping or converting bytes,
+     *  or null for the standard input. */
+    private String _inputName;
+
+    /** Name of the output file when memory-mapping or converting bytes,
+     *  or null for the standard output. */
+    private String _outputName;
+
     /** True if --verbose specified. */
     private static boolean _verbose;
+
+    /** Statistics of this run. */
+    private static RunStats _stats = RunStats.OFF;
+
+    /** Receives a trace of the keypresses of the machine in use. */
+    private static TraceSink _trace = TraceSink.NONE;
+
+    /** True if --stream specified. */
+    private static boolean _stream;
+
+    /** True if --mmap specified. */
+    private static boolean _mmap;
+
+    /** True if --recover specified. */
+    private static boolean _recover;
+
+    /** Crib given with --bombe, or null. */
+    private static String _crib;
+
+    /** Position given with --crib-at, or -1. */
+    private static int _cribAt = -1;
+
+    /** Directory given with --config-cache, or null. */
+    private static String _configCache;
+
+    /** Corpus file given with --ngrams, or null. */
+    private static String _ngrams;
+
+    /** Settings line given with --binary, or null. */
+    private static String _binary;
+
+    /** Address given with --server, or null. */
+    private static String _server;
+
+    /** Memory budget of the keystream cache in bytes, or 0 for none. */
+    private static long _cacheBytes;
+
+    /** Largest keystream cache budget, in megabytes. */
+    private static final long MAX_CACHE_MB = 1 << 20;
 }
@@ -0,0 +1,156 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/** Memory-mapped file input and output for MessageStreams over ASCII
+ *  alphabets.  Each byte of input is one character, and each character
+ *  of output is written as one byte.  Input is mapped in windows of
+ *  WINDOW bytes and output in pieces of STAGE bytes, so the size of a
+ *  file is not limited by the size of a mapping.
+ *  @author Kelvin Mo
+ */
+final class MappedIO {
+
+    /** Size of each mapped region of an input file. */
+    static final int WINDOW = 1 << 26;
+
+    /** Number of bytes of output mapped at a time. */
+    static final int STAGE = 1 << 22;
+
+    /** Not instantiable. */
+    private MappedIO() {
+    }
+
+    /** Return true iff every character of ALPHA is 7-bit ASCII. */
+    static boolean isAscii(Alphabet alpha) {
+        for (int i = 0; i < alpha.size(); i++) {
+            if (alpha.toCodePoint(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Map the file named NAME and feed its contents to STREAM, then
+     *  finish STREAM. */
+    static void feed(String name, MessageStream stream) throws IOException {
+        feed(name, stream, WINDOW);
+    }
+
+    /** Map the file named NAME in windows of WINDOW bytes and feed its
+     *  contents to STREAM, then finish STREAM. */
+    static void feed(String name, MessageStream stream, int window)
+        throws IOException {
+        char[] chunk = new char[MessageStream.CHUNK];
+        try (FileChannel in = FileChannel.open(Paths.get(name),
+                                               StandardOpenOption.READ)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; pos += window) {
+                MappedByteBuffer buf =
+                    in.map(FileChannel.MapMode.READ_ONLY, pos,
+                           Math.min(window, size - pos));
+                while (buf.hasRemaining()) {
+                    int n = Math.min(chunk.length, buf.remaining());
+                    for (int i = 0; i < n; i++) {
+                        chunk[i] = (char) (buf.get() & 0xff);
+                    }
+                    stream.feed(chunk, 0, n);
+                }
+            }
+        }
+        stream.finish();
+    }
+
+    /** A Writer onto a memory-mapped file that stores each character as
+     *  one byte.  Characters are gathered as bytes in a staging buffer,
+     *  and each full buffer is copied in bulk into a mapping of exactly
+     *  the region of the file it fills.  The file is therefore never
+     *  longer than what has been written, and needs no truncating while
+     *  a mapping of it is live. */
+    static class Output extends Writer {
+
+        /** An Output replacing the contents of the file named NAME. */
+        Output(String name) throws IOException {
+            this(name, STAGE);
+        }
+
+        /** An Output replacing the contents of the file named NAME that
+         *  maps STAGE bytes at a time. */
+        Output(String name, int stage) throws IOException {
+            _channel = FileChannel.open(Paths.get(name),
+                                        StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE,
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.TRUNCATE_EXISTING);
+            _stage = new byte[stage];
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, _stage.length - _staged);
+                for (int i = 0; i < n; i++) {
+                    _stage[_staged + i] = (byte) cbuf[off + i];
+                }
+                _staged += n;
+                off += n;
+                len -= n;
+                if (_staged == _stage.length) {
+                    drain();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+            if (_buf != null) {
+                _buf.force();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            _buf = null;
+            _channel.close();
+        }
+
+        /** Copy the staged bytes into a new mapping of the file just past
+         *  what has been written. */
+        private void drain() throws IOException {
+            if (_staged == 0) {
+                return;
+            }
+            if (_buf != null) {
+                _buf.force();
+            }
+            _buf = _channel.map(FileChannel.MapMode.READ_WRITE, _written,
+                                _staged);
+            _buf.put(_stage, 0, _staged);
+            _written += _staged;
+            _staged = 0;
+        }
+
+        /** The output file. */
+        private final FileChannel _channel;
+
+        /** Bytes written but not yet copied into the file. */
+        private final byte[] _stage;
+
+        /** Number of bytes in _stage. */
+        private int _staged;
+
+        /** The most recent mapping, or null. */
+        private MappedByteBuffer _buf;
+
+        /** Number of bytes copied into the file so far. */
+        private long _written;
+    }
+
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the MappedIO class.
+ *  @author Kelvin Mo
+ */
+public class MappedIOTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a stream that converts with a fresh naval machine and
+     *  writes to OUTPUT. */
+    private MessageStream stream(Writer output) {
+        Machine mach = TestUtils.naval();
+        return new MessageStream(mach, settings -> Main.setUp(mach, settings),
+                                 output);
+    }
+
+    /** Return LINES lines of random messages, with a settings line
+     *  before every tenth, drawn from RANDOM. */
+    private String messages(int lines, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < lines; k++) {
+            if (k % 10 == 0) {
+                result.append("* B Beta III IV I A")
+                    .append((char) ('A' + random.nextInt(26)))
+                    .append("LE (HQ) (EX)\n");
+            }
+            int len = random.nextInt(200);
+            for (int i = 0; i < len; i++) {
+                result.append(i % 7 == 6 ? ' '
+                              : (char) ('A' + random.nextInt(26)));
+            }
+            result.append(k % 3 == 0 ? "\r\n" : "\n");
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesStream() throws IOException {
+        String input = messages(300, new Random(6));
+        StringWriter expected = new StringWriter();
+        stream(expected).process(new StringReader(input));
+
+        Path in = Files.createTempFile("mapped", ".in");
+        Path out = Files.createTempFile("mapped", ".out");
+        try {
+            Files.write(in, input.getBytes(StandardCharsets.US_ASCII));
+            int window = 4096;
+            assertTrue(input.length() > 3 * window);
+            try (MappedIO.Output output =
+                     new MappedIO.Output(out.toString(), 1000)) {
+                MappedIO.feed(in.toString(), stream(output), window);
+            }
+            assertEquals(expected.toString(),
+                         new String(Files.readAllBytes(out),
+                                    StandardCharsets.US_ASCII));
+        } finally {
+            Files.deleteIfExists(in);
+            Files.deleteIfExists(out);
+        }
+    }
+
+    @Test
+    public void testIsAscii() {
+        assertTrue(MappedIO.isAscii(new Alphabet()));
+        assertFalse(MappedIO.isAscii(new Alphabet("AB\u00e9")));
+    }
+
+}
@@ -0,0 +1,258 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Incremental driver that runs a stream of settings lines and messages
+ *  through a Machine, or other CharConverter, in fixed-size chunks, so
+ *  that memory use does not depend on the length of a line.  Follows the
+ *  same rules as Main.process: settings lines start with '*', spaces
+ *  in messages are ignored (other whitespace is an error, as it is
+ *  there), output is printed in groups of five, and blank lines at the
+ *  end of the input are dropped.
+ *  @author Kelvin Mo
+ */
+class MessageStream {
+
+    /** Size of my input, letter, and output buffers. */
+    static final int CHUNK = 1 << 16;
+
+    /** Line state: nothing read on the current line yet. */
+    private static final int LINE_START = 0;
+
+    /** Line state: only spaces read on the current line. */
+    private static final int BLANK = 1;
+
+    /** Line state: reading a settings line. */
+    private static final int SETTINGS = 2;
+
+    /** Line state: reading a message line. */
+    private static final int MESSAGE = 3;
+
+    /** A stream that converts messages with MACHINE, passes each settings
+     *  line to SETUP, and writes its results to OUTPUT. */
+    MessageStream(CharConverter machine, Consumer<String> setUp,
+                  Writer output) {
+        this(machine, setUp, output, RunStats.OFF);
+    }
+
+    /** A stream that converts messages with MACHINE, passes each settings
+     *  line to SETUP, and writes its results to OUTPUT, recording in
+     *  STATS each message and the time from its first letter to the end
+     *  of its line.  Characters and conversion time are not recorded
+     *  here; MACHINE may record them (see RunStats.timed). */
+    MessageStream(CharConverter machine, Consumer<String> setUp,
+                  Writer output, RunStats stats) {
+        _machine = machine;
+        _setUp = setUp;
+        _output = output;
+        _stats = stats;
+    }
+
+    /** Process everything remaining in INPUT and finish the stream. */
+    void process(Reader input) throws IOException {
+        char[] buf = new char[CHUNK];
+        int n;
+        while ((n = input.read(buf)) != -1) {
+            feed(buf, 0, n);
+        }
+        finish();
+    }
+
+    /** Process the LEN characters of BUF starting at OFF. */
+    void feed(char[] buf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            char c = buf[i];
+            if (_skipNewline) {
+                _skipNewline = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (c == '\n' || c == '\r') {
+                endLine();
+                _skipNewline = c == '\r';
+                continue;
+            }
+            switch (_state) {
+            case LINE_START:
+                if (c == '*') {
+                    startLine(SETTINGS);
+                    _settings.append(c);
+                    break;
+                }
+                _state = BLANK;
+                addMessageChar(c);
+                break;
+            case BLANK:
+                addMessageChar(c);
+                break;
+            case SETTINGS:
+                _settings.append(c);
+                break;
+            default:
+                addMessageChar(c);
+                break;
+            }
+        }
+    }
+
+    /** Write out the results of every complete message line fed so far,
+     *  and as much of the current line as has been converted. */
+    void flush() throws IOException {
+        flushOutput();
+        _output.flush();
+    }
+
+    /** Finish the last line and flush all pending output. */
+    void finish() throws IOException {
+        if (_state == SETTINGS || _state == MESSAGE) {
+            endLine();
+        }
+        if (!_configured) {
+            throw error("Format Incorrect.");
+        }
+        flushOutput();
+        _output.flush();
+    }
+
+    /** Add C, read on a line that is not a settings line, to the current
+     *  message. */
+    private void addMessageChar(char c) throws IOException {
+        if (c == ' ') {
+            return;
+        }
+        if (_state != MESSAGE) {
+            startLine(MESSAGE);
+            _messageStart = _stats.clock();
+        }
+        _letters[_numLetters] = c;
+        _numLetters += 1;
+        if (_numLetters == _letters.length) {
+            flushLetters();
+        }
+    }
+
+    /** Begin a line of kind STATE, first emitting any blank lines that
+     *  preceded it. */
+    private void startLine(int state) throws IOException {
+        if (!_configured && state == MESSAGE) {
+            throw error("Format Incorrect.");
+        }
+        for (; _pendingBlankLines > 0; _pendingBlankLines -= 1) {
+            writeNewline();
+        }
+        _state = state;
+    }
+
+    /** Handle the end of the current line. */
+    private void endLine() throws IOException {
+        switch (_state) {
+        case SETTINGS:
+            _setUp.accept(_settings.toString());
+            _settings.setLength(0);
+            _configured = true;
+            break;
+        case MESSAGE:
+            flushLetters();
+            writeNewline();
+            _column = 0;
+            _stats.messageEnded(_messageStart);
+            break;
+        default:
+            if (!_configured) {
+                throw error("Format Incorrect.");
+            }
+            _pendingBlankLines += 1;
+            break;
+        }
+        _state = LINE_START;
+    }
+
+    /** Convert the buffered message letters and write them out in groups
+     *  of five. */
+    private void flushLetters() throws IOException {
+        _machine.convert(_letters, 0, _numLetters, _letters);
+        for (int i = 0; i < _numLetters; i++) {
+            if (_outLen + 2 > _out.length) {
+                flushOutput();
+            }
+            _out[_outLen++] = _letters[i];
+            _column += 1;
+            if (_column % 5 == 0) {
+                _out[_outLen++] = ' ';
+            }
+        }
+        _numLetters = 0;
+    }
+
+    /** Write a line separator. */
+    private void writeNewline() throws IOException {
+        if (_outLen + NEWLINE.length > _out.length) {
+            flushOutput();
+        }
+        for (char c : NEWLINE) {
+            _out[_outLen++] = c;
+        }
+    }
+
+    /** Write out everything in my output buffer. */
+    private void flushOutput() throws IOException {
+        _output.write(_out, 0, _outLen);
+        _outLen = 0;
+    }
+
+    /** The line separator written after each message. */
+    private static final char[] NEWLINE =
+        System.lineSeparator().toCharArray();
+
+    /** Converts messages. */
+    private final CharConverter _machine;
+
+    /** Receives each settings line. */
+    private final Consumer<String> _setUp;
+
+    /** Destination of converted messages. */
+    private final Writer _output;
+
+    /** Records each message. */
+    private final RunStats _stats;
+
+    /** Time at which the current message began. */
+    private long _messageStart;
+
+    /** State of the line being read. */
+    private int _state = LINE_START;
+
+    /** True once a settings line has been processed. */
+    private boolean _configured;
+
+    /** True if the last character read was a carriage return. */
+    private boolean _skipNewline;
+
+    /** Number of blank lines read but not yet written. */
+    private int _pendingBlankLines;
+
+    /** The settings line being read. */
+    private final StringBuilder _settings = new StringBuilder();
+
+    /** Message letters not yet converted. */
+    private final char[] _letters = new char[CHUNK];
+
+    /** Number of valid characters in _letters. */
+    private int _numLetters;
+
+    /** Number of letters written on the current output line. */
+    private int _column;
+
+    /** Output not yet written to _output. */
+    private final char[] _out = new char[CHUNK];
+
+    /** Number of valid characters in _out. */
+    private int _outLen;
+
+}
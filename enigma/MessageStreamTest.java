@@ -0,0 +1,99 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.function.Consumer;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MessageStream class.
+ *  @author Kelvin Mo
+ */
+public class MessageStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String NL = System.lineSeparator();
+
+    /** Return the output of streaming INPUT through a machine with the
+     *  rotors B Beta III IV I, which takes settings lines of the form
+     *  "* SETTING PLUGBOARD". */
+    private String stream(String input) throws IOException {
+        return stream(input, RunStats.OFF);
+    }
+
+    /** Return the output of streaming INPUT as stream(INPUT) does,
+     *  recording messages and their characters in STATS. */
+    private String stream(String input, RunStats stats) throws IOException {
+        HashMap<String, Rotor> rotors = new HashMap<>();
+        rotors.put("B", new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        rotors.put("Beta", new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), UPPER)));
+        rotors.put("III", new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        rotors.put("IV", new MovingRotor("IV",
+                new Permutation(NAVALA.get("IV"), UPPER), "J"));
+        rotors.put("I", new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        Machine mach = new Machine(UPPER, 5, 3, rotors.values());
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        StringWriter out = new StringWriter();
+        Consumer<String> setUp = settings -> {
+            String[] parts = settings.split(" ", 3);
+            mach.setRotors(parts[1]);
+            mach.setPlugboard(new Permutation(parts[2], UPPER));
+        };
+        MessageStream stream =
+            new MessageStream(stats.timed(mach), setUp, out, stats);
+        stream.process(new StringReader(input));
+        return out.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testGroupsOfFive() throws IOException {
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW" + NL,
+                stream("* AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+                       + "FROM HIS SHOULDER HIAWATHA\n"));
+    }
+
+    @Test
+    public void testBlankLines() throws IOException {
+        assertEquals("QVPQS " + NL + NL + "OKOIL " + NL,
+                stream("* AXLE (HQ) (EX) (IP) (TR) (BY)\r\n"
+                       + "FROMH\r\n  \r\nISSHO\r\n\r\n\n"));
+    }
+
+    @Test
+    public void testStats() throws IOException {
+        RunStats stats = new RunStats();
+        stream("* AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+               + "FROM HIS\n\n  \nSHOULDER\n* AXLE (HQ)\nHIAWATHA", stats);
+        assertEquals(3, stats.messages());
+        assertEquals(3, stats.latency().count());
+        assertEquals(23, stats.chars());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTabInMessage() throws IOException {
+        stream("* AXLE (HQ) (EX) (IP) (TR) (BY)\nFROM\tHIS\n");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMessageWithoutSettings() throws IOException {
+        stream("FROM HIS SHOULDER\n");
+    }
+
+}
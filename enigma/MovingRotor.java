@@ -10,22 +10,39 @@ class MovingRotor extends Rotor {
     /** Position of notches. */
     private String notch;
 
+    /** True at the index of each notch. */
+    private boolean[] _notchAt;
+
     /** A rotor named NAME whose permutation in its default setting is
-     *  PERM, and whose notches are at the positions indicated in NOTCHES.
-     *  The Rotor is initially in its 0 setting (first character of its
-     *  alphabet).
+     *  PERM, and whose notches are at the positions indicated in NOTCHES,
+     *  which must all be in its alphabet.  The Rotor is initially in its 0
+     *  setting (first character of its alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         this.notch = notches;
+        _notchAt = new boolean[size()];
+        notches.codePoints().forEach(c -> {
+            int k = alphabet().indexOf(c);
+            if (k < 0) {
+                throw error("Notch of rotor %s not in alphabet.", name);
+            }
+            _notchAt[k] = true;
+        });
+    }
+
+    @Override
+    Rotor copy() {
+        return copyState(new MovingRotor(name(), permutation(), notch));
     }
 
     @Override
     void advance() {
         if (setting() + 1 == size()) {
-            set(-1);
+            set(0);
+        } else {
+            set(setting() + 1);
         }
-        set(permutation().wrap(setting() + 1));
     }
 
     @Override
@@ -40,9 +57,11 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        if (notch.contains(Character.toString(alphabet().toChar(setting())))) {
-            return true;
-        }
-        return false;
+        return _notchAt[setting()];
+    }
+
+    @Override
+    boolean atNotch(int posn) {
+        return _notchAt[posn];
     }
 }
@@ -95,4 +95,50 @@ public class MovingRotorTest {
                 rotor.convertBackward(alpha.indexOf('S')));
     }
 
+    @Test
+    public void checkPrecomputedTables() {
+        setRotor("III", NAVALA, "V");
+        Rotor plain = new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V");
+        assertTrue(rotor.precompute());
+        for (int s = 0; s < UPPER.size(); s += 1) {
+            rotor.set(s);
+            plain.set(s);
+            for (int p = 0; p < UPPER.size(); p += 1) {
+                assertEquals(msg("III", "forward %d at %d", p, s),
+                             plain.convertForward(p),
+                             rotor.convertForward(p));
+                assertEquals(msg("III", "backward %d at %d", p, s),
+                             plain.convertBackward(p),
+                             rotor.convertBackward(p));
+            }
+        }
+        rotor.set(0);
+        checkRotor("Rotor III precomputed", UPPER_STRING,
+                   NAVALA_MAP.get("III"));
+    }
+
+    @Test
+    public void checkShortTables() {
+        StringBuilder chars = new StringBuilder();
+        for (int c = 0; c < 400; c += 1) {
+            chars.append((char) (0x100 + c));
+        }
+        Alphabet wide = new Alphabet(chars.toString());
+        String cycles = "(" + chars.substring(0, 250) + ") ("
+            + chars.substring(250, 399) + ")";
+        Permutation perm = new Permutation(cycles, wide);
+        Rotor plain = new MovingRotor("W", perm, "");
+        Rotor tabled = new MovingRotor("W", perm, "");
+        assertTrue(tabled.precompute());
+        for (int s = 0; s < wide.size(); s += 7) {
+            for (int p = 0; p < wide.size(); p += 1) {
+                assertEquals(plain.convertForward(p, s),
+                             tabled.convertForward(p, s));
+                assertEquals(plain.convertBackward(p, s),
+                             tabled.convertBackward(p, s));
+            }
+        }
+    }
+
 }
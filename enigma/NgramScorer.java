@@ -0,0 +1,171 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** Scores a text by how likely its letter sequences are in a corpus of
+ *  plaintext: the sum, over every window of ORDER consecutive letters,
+ *  of the base-10 log of that n-gram's frequency in the corpus.  Unlike
+ *  the index of coincidence, this depends on the order of the letters,
+ *  so it can tell a nearly right plugboard from a right one.
+ *
+ *  The frequencies of the unigrams through the quadgrams of the corpus
+ *  are kept in flat float tables, one per length K, indexed by the K
+ *  alphabet indices of an n-gram packed in base size().  Each table
+ *  needs size()**K entries, so long n-grams are only kept for small
+ *  alphabets; order() is the longest kept.  The tables are not changed
+ *  after loading, so one scorer may be shared between threads.
+ *  @author Kelvin Mo
+ */
+class NgramScorer implements TextScorer {
+
+    /** Length of the longest n-grams counted. */
+    static final int MAX_ORDER = 4;
+
+    /** Largest number of entries in one table. */
+    static final int MAX_TABLE = 1 << 22;
+
+    /** Count given to n-grams that never occur in the corpus. */
+    private static final double FLOOR = 0.01;
+
+    /** A scorer for texts over ALPHA, with the frequencies of the text
+     *  read from CORPUS.  Characters of CORPUS that are not in ALPHA,
+     *  even as upper case, are skipped, so n-grams run across them. */
+    NgramScorer(Alphabet alpha, Reader corpus) throws IOException {
+        _size = alpha.size();
+        int order = 0;
+        for (long entries = _size; order < MAX_ORDER
+                 && entries <= MAX_TABLE; entries *= _size) {
+            order += 1;
+        }
+        if (order == 0) {
+            throw error("alphabet too large for n-gram statistics");
+        }
+        _order = order;
+        _tables = new float[order + 1][];
+        _modulus = new int[order + 1];
+        int[][] counts = new int[order + 1][];
+        for (int k = 1, entries = _size; k <= order; k++, entries *= _size) {
+            counts[k] = new int[entries];
+            _modulus[k] = entries;
+        }
+        long[] totals = new long[order + 1];
+        char[] buf = new char[MessageStream.CHUNK];
+        int seen = 0;
+        long packed = 0;
+        for (int n; (n = corpus.read(buf)) != -1;) {
+            for (int i = 0; i < n; i++) {
+                int c = index(alpha, buf[i]);
+                if (c < 0) {
+                    continue;
+                }
+                seen += 1;
+                packed = (packed * _size + c) % _modulus[order];
+                for (int k = 1; k <= order && k <= seen; k++) {
+                    counts[k][(int) (packed % _modulus[k])] += 1;
+                    totals[k] += 1;
+                }
+            }
+        }
+        if (totals[order] == 0) {
+            throw error("corpus has no %d-grams", order);
+        }
+        for (int k = 1; k <= order; k++) {
+            _tables[k] = new float[counts[k].length];
+            double total = Math.log10(totals[k]);
+            for (int g = 0; g < counts[k].length; g++) {
+                double count = counts[k][g] == 0 ? FLOOR : counts[k][g];
+                _tables[k][g] = (float) (Math.log10(count) - total);
+            }
+        }
+    }
+
+    /** Return the length of the n-grams I score by. */
+    int order() {
+        return _order;
+    }
+
+    /** Return the log frequencies of the n-grams of length K, indexed by
+     *  packed alphabet indices.  The array must not be modified. */
+    float[] table(int k) {
+        if (k < 1 || k > _order) {
+            throw error("no table of %d-grams", k);
+        }
+        return _tables[k];
+    }
+
+    @Override
+    public double score(int[] text, int len) {
+        int k = Math.min(_order, len);
+        if (k == 0) {
+            return 0;
+        }
+        float[] table = _tables[k];
+        int n = _size, low = _modulus[k] / n;
+        int packed = 0;
+        for (int i = 0; i < k - 1; i++) {
+            packed = packed * n + text[i];
+        }
+        double sum = 0;
+        for (int i = k - 1; i < len; i++) {
+            packed = (packed % low) * n + text[i];
+            sum += table[packed];
+        }
+        return sum;
+    }
+
+    /** Rescores only the windows that hold a changed position. */
+    @Override
+    public double rescore(int[] before, double score, int[] after, int len,
+                          int[] changed, int count) {
+        int k = Math.min(_order, len);
+        if (k == 0) {
+            return 0;
+        }
+        float[] table = _tables[k];
+        double delta = 0;
+        int next = 0;
+        for (int j = 0; j < count; j++) {
+            int first = Math.max(Math.max(0, changed[j] - k + 1), next);
+            int last = Math.min(changed[j], len - k);
+            for (int w = first; w <= last; w++) {
+                int was = 0, now = 0;
+                for (int i = w; i < w + k; i++) {
+                    was = was * _size + before[i];
+                    now = now * _size + after[i];
+                }
+                delta += table[now] - table[was];
+            }
+            next = Math.max(next, last + 1);
+        }
+        return score + delta;
+    }
+
+    /** Return the index in ALPHA of C, or of its upper case, or -1 if
+     *  neither is in ALPHA. */
+    private static int index(Alphabet alpha, char c) {
+        if (alpha.contains(c)) {
+            return alpha.toInt(c);
+        }
+        char upper = Character.toUpperCase(c);
+        if (alpha.contains(upper)) {
+            return alpha.toInt(upper);
+        }
+        return -1;
+    }
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Length of the n-grams I score by. */
+    private final int _order;
+
+    /** Log frequency tables, by n-gram length. */
+    private final float[][] _tables;
+
+    /** Number of distinct n-grams, by length. */
+    private final int[] _modulus;
+
+}
@@ -0,0 +1,135 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.KeyRecoveryTest.*;
+
+/** The suite of all JUnit tests for the NgramScorer class.
+ *  @author Kelvin Mo
+ */
+public class NgramScorerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return a scorer over ALPHA with the statistics of CORPUS. */
+    private static NgramScorer scorer(Alphabet alpha, String corpus) {
+        try {
+            return new NgramScorer(alpha, new StringReader(corpus));
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCounts() {
+        Alphabet abc = new Alphabet("ABC");
+        NgramScorer scorer = scorer(abc, "ab, Ab; c!");
+        assertEquals(4, scorer.order());
+        float[] unigrams = scorer.table(1);
+        assertEquals(Math.log10(2.0 / 5), unigrams[0], 1e-6);
+        assertEquals(Math.log10(2.0 / 5), unigrams[1], 1e-6);
+        assertEquals(Math.log10(1.0 / 5), unigrams[2], 1e-6);
+        float[] bigrams = scorer.table(2);
+        assertEquals(Math.log10(2.0 / 4), bigrams[0 * 3 + 1], 1e-6);
+        assertEquals(Math.log10(0.01 / 4), bigrams[2 * 3 + 2], 1e-6);
+        float[] quadgrams = scorer.table(4);
+        assertEquals(Math.log10(1.0 / 2),
+                     quadgrams[((0 * 3 + 1) * 3 + 0) * 3 + 1], 1e-6);
+    }
+
+    @Test
+    public void testOrderShrinksForLargeAlphabets() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '!'; c < '!' + 96; c++) {
+            chars.append(c);
+        }
+        NgramScorer scorer = scorer(new Alphabet(chars.toString()),
+                                    "!\"#$%&");
+        assertEquals(3, scorer.order());
+    }
+
+    @Test
+    public void testScore() {
+        NgramScorer scorer = scorer(AZ, PLAIN);
+        int[] text = new int[PLAIN.length()];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = AZ.toInt(PLAIN.charAt(i));
+        }
+        float[] quadgrams = scorer.table(4);
+        double expected = 0;
+        for (int i = 0; i + 4 <= 30; i++) {
+            int g = ((text[i] * 26 + text[i + 1]) * 26 + text[i + 2]) * 26
+                + text[i + 3];
+            expected += quadgrams[g];
+        }
+        assertEquals(expected, scorer.score(text, 30), 1e-6);
+        assertEquals(scorer.table(2)[text[0] * 26 + text[1]],
+                     scorer.score(text, 2), 1e-6);
+        int[] shuffled = text.clone();
+        Random random = new Random(191);
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = t;
+        }
+        assertTrue(scorer.score(text, text.length)
+                   > scorer.score(shuffled, text.length));
+    }
+
+    @Test
+    public void testRescoreMatchesScore() {
+        NgramScorer scorer = scorer(AZ, PLAIN);
+        Random random = new Random(192);
+        int len = 200;
+        int[] before = new int[len], after = new int[len];
+        int[] changed = new int[len];
+        for (int trial = 0; trial < 100; trial++) {
+            for (int i = 0; i < len; i++) {
+                before[i] = after[i] = random.nextInt(26);
+            }
+            int count = 0;
+            for (int i = 0; i < len; i++) {
+                if (random.nextInt(10) == 0) {
+                    after[i] = random.nextInt(26);
+                    changed[count++] = i;
+                }
+            }
+            double score = scorer.score(before, len);
+            assertEquals(scorer.score(after, len),
+                         scorer.rescore(before, score, after, len, changed,
+                                        count),
+                         1e-3);
+        }
+    }
+
+    @Test
+    public void testRecoverWithNgrams() {
+        String settings = "* B I III QE (AR) (GT) (MZ) (HX) (LP) (CV)";
+        NgramScorer ngrams = scorer(AZ, PLAIN);
+        KeyRecovery recovery =
+            new KeyRecovery(small(), ForkJoinPool.commonPool(),
+                            () -> new IndexOfCoincidence(26), () -> ngrams);
+        int[] cipher = recovery.catalog().indices(encrypt(settings));
+        KeyRecovery.Candidate best = recovery.recover(cipher, 5).get(0);
+        Machine mach = small();
+        Main.setUp(mach, best.settingsLine(recovery.catalog()));
+        assertEquals(PLAIN, mach.convert(encrypt(settings)));
+    }
+
+}
@@ -0,0 +1,94 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Converts long messages with a Machine by splitting them into chunks
+ *  that are converted concurrently.  The machine is compiled once per
+ *  message, and each chunk gets its own cursor, skipped ahead to the
+ *  chunk's offset, so the result is the same as converting the whole
+ *  message with the machine itself.
+ *  @author Kelvin Mo
+ */
+class ParallelMachine {
+
+    /** Default number of characters converted by one task. */
+    static final int DEFAULT_CHUNK = 1 << 16;
+
+    /** A ParallelMachine that converts with MACHINE, using POOL to run
+     *  tasks of CHUNK characters each. */
+    ParallelMachine(Machine machine, ForkJoinPool pool, int chunk) {
+        if (chunk <= 0) {
+            throw new EnigmaException("Chunk size must be positive.");
+        }
+        _machine = machine;
+        _pool = pool;
+        _chunk = chunk;
+    }
+
+    /** A ParallelMachine that converts with MACHINE in the common pool. */
+    ParallelMachine(Machine machine) {
+        this(machine, ForkJoinPool.commonPool(), DEFAULT_CHUNK);
+    }
+
+    /** Returns the encoding/decoding of MSG, updating the state of my
+     *  machine's rotors accordingly. */
+    String convert(String msg) {
+        char[] buf = msg.toCharArray();
+        convert(buf, 0, buf.length, buf);
+        return new String(buf);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, storing the
+     *  results at the same positions of OUT (which may be IN), exactly as
+     *  my machine's convert would, and leave my machine's rotors where
+     *  that would have left them.  If a character is not in the alphabet,
+     *  throws an EnigmaException and leaves the rotors unchanged.  A
+     *  machine with no plugboard converts as if it had the identity. */
+    void convert(char[] in, int off, int len, char[] out) {
+        if (len <= _chunk && _machine.plugboard() != null) {
+            Alphabet alpha = _machine.alphabet();
+            for (int i = off; i < off + len; i++) {
+                alpha.toInt(in[i]);
+            }
+            _machine.convert(in, off, len, out);
+            return;
+        }
+        CompiledMachine compiled = _machine.compile();
+        ArrayList<RecursiveAction> tasks = new ArrayList<>();
+        for (int start = 0; start < len; start += _chunk) {
+            final int from = start, size = Math.min(_chunk, len - start);
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    MachineCursor cursor = compiled.cursor();
+                    cursor.skip(from);
+                    cursor.convert(in, off + from, size, out);
+                }
+            });
+        }
+        _pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        _machine.skip(len);
+    }
+
+    /** Return the machine whose conversions I perform. */
+    Machine machine() {
+        return _machine;
+    }
+
+    /** The machine whose state I start from and advance. */
+    private final Machine _machine;
+
+    /** Pool that runs my tasks. */
+    private final ForkJoinPool _pool;
+
+    /** Number of characters converted by one task. */
+    private final int _chunk;
+
+}
@@ -1,5 +1,7 @@
 package enigma;
-import java.util.HashMap;
+
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -8,43 +10,115 @@ import static enigma.EnigmaException.*;
  */
 class Permutation {
 
-    /** Array used for splitting the cycles. */
-    private String[] _cycles;
+    /** Index of the image of each index of my alphabet. */
+    private int[] _forward;
 
-    /** Hashmap for storing mappings. */
-    private HashMap<Character, Character> map;
+    /** Index of the preimage of each index of my alphabet. */
+    private int[] _inverse;
+
+    /** Number of indices that I do not map to themselves. */
+    private int _moved;
 
     /** Set this Permutation to that specified by CYCLES, a string in the
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      *  is interpreted as a permutation in cycle notation.  Characters in the
      *  alphabet that are not included in any cycle map to themselves.
-     *  Whitespace is ignored. */
+     *  Whitespace is ignored.  CYCLES is read in one pass, and a character
+     *  outside parentheses, an unbalanced parenthesis, a character not
+     *  in ALPHABET, or one named twice (so that the cycles would not
+     *  describe a bijection) is an error. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        String cycle = cycles;
-        cycle = cycle.replace("(", "");
-        cycle = cycle.replace(")", " ");
-        _cycles = cycle.split(" ");
-
-        map = new HashMap<Character, Character>();
-        for (int i = 0; i < _alphabet.size(); i++) {
-            map.put(alphabet.toChar(i), alphabet.toChar(i));
+        _forward = identity(alphabet.size());
+        boolean[] named = new boolean[_forward.length];
+        int first = -1, prev = -1, c = 0;
+        boolean open = false;
+        for (int i = 0; i < cycles.length(); i += Character.charCount(c)) {
+            c = cycles.codePointAt(i);
+            if (c == '(') {
+                if (open) {
+                    throw error("Nested cycle in %s", cycles);
+                }
+                open = true;
+                first = prev = -1;
+            } else if (c == ')') {
+                if (!open) {
+                    throw error("Unbalanced cycle in %s", cycles);
+                }
+                if (prev >= 0) {
+                    _forward[prev] = first;
+                }
+                open = false;
+            } else if (!Character.isWhitespace(c)) {
+                if (!open) {
+                    throw error("Character outside cycle in %s", cycles);
+                }
+                int k = _alphabet.codePointIndex(c);
+                if (named[k]) {
+                    throw error("Character %s repeated in %s",
+                                new String(Character.toChars(c)), cycles);
+                }
+                named[k] = true;
+                if (prev >= 0) {
+                    _forward[prev] = k;
+                } else {
+                    first = k;
+                }
+                prev = k;
+            }
         }
-        for (int i = 0; i < _cycles.length; i++) {
-            addCycle(_cycles[i]);
+        if (open) {
+            throw error("Unbalanced cycle in %s", cycles);
         }
+        _inverse = inverse(_forward);
+        _moved = moved(_forward);
+    }
+
+    /** Set this Permutation to the one that takes each index I of
+     *  ALPHABET to FORWARD[I], which it keeps.  FORWARD must be a
+     *  bijection on the indices of ALPHABET. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        if (forward.length != alphabet.size()) {
+            throw error("Permutation does not match alphabet.");
+        }
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse(forward);
+        _moved = moved(forward);
     }
 
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        for (int i = 0; i < cycle.length(); i++) {
-            if (i != cycle.length() - 1) {
-                map.put(cycle.charAt(i), cycle.charAt(i + 1));
-            } else {
-                map.put(cycle.charAt(i), cycle.charAt(0));
+    /** Return the identity mapping of 0 .. N - 1. */
+    private static int[] identity(int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = i;
+        }
+        return result;
+    }
+
+    /** Return the inverse of the mapping FORWARD, which must be a
+     *  bijection on 0 .. FORWARD.length - 1. */
+    private static int[] inverse(int[] forward) {
+        int[] result = new int[forward.length];
+        Arrays.fill(result, -1);
+        for (int i = 0; i < forward.length; i++) {
+            int k = forward[i];
+            if (k < 0 || k >= forward.length || result[k] != -1) {
+                throw error("Permutation is not a bijection.");
             }
+            result[k] = i;
         }
+        return result;
+    }
+
+    /** Return the number of indices that FORWARD does not map to
+     *  themselves. */
+    private static int moved(int[] forward) {
+        int result = 0;
+        for (int i = 0; i < forward.length; i++) {
+            result += forward[i] == i ? 0 : 1;
+        }
+        return result;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -58,42 +132,30 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return map.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char c = _alphabet.toChar(wrap(p));
-        return _alphabet.toInt(permute(c));
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char ch = _alphabet.toChar(wrap(c));
-        return _alphabet.toInt(invert(ch));
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        if (_alphabet.contains(p)) {
-            return map.get(p);
-        }
-        throw new EnigmaException("Does not contain character.");
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        if (map.containsValue(c)) {
-            for (char key: map.keySet()) {
-                if (map.get(key) == c) {
-                    return key;
-                }
-            }
-        }
-        throw new EnigmaException("Does not contain character.");
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -104,15 +166,7 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int count = 0;
-        for (int i = 0; i < _cycles.length; i++) {
-            count += _cycles[i].length();
-        }
-        if (count != _alphabet.size()) {
-            return false;
-        }
-        return true;
-
+        return _moved == size();
     }
 
     /** Alphabet of this permutation. */
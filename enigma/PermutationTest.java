@@ -111,12 +111,76 @@ public class PermutationTest {
         assertEquals(q.permute(0), 4);
     }
 
+    @Test
+    public void testInvertUndoesPermute() {
+        for (String name : NAVALA.keySet()) {
+            Permutation p = new Permutation(NAVALA.get(name), UPPER);
+            for (int i = 0; i < p.size(); i += 1) {
+                assertEquals(msg(name, "inverse of %d", i),
+                             i, p.invert(p.permute(i)));
+                assertEquals(msg(name, "wrapped %d", i),
+                             p.permute(i), p.permute(i + p.size()));
+            }
+        }
+    }
+
     @Test(expected = EnigmaException.class)
     public void testOutOfRange() {
         Permutation p = new Permutation("(BADCE)", new Alphabet("ABCDE"));
         p.invert('F');
     }
 
+    @Test
+    public void testCyclesIgnoreWhitespace() {
+        Alphabet a = new Alphabet("ABCDE");
+        Permutation p = new Permutation(" ( B A\tC ) (DE)", a);
+        assertEquals(2, p.permute(0));
+        assertEquals(0, p.permute(1));
+        assertEquals(3, p.permute(4));
+        assertTrue(p.derangement());
+    }
+
+    @Test
+    public void testMalformedCycles() {
+        Alphabet a = new Alphabet("ABCDE");
+        String[] bad = { "(AB", "AB)", "(A(B))", "(AB) C", "(AF)", "(ABA)",
+                         "(AB) (CB)" };
+        for (String cycles : bad) {
+            try {
+                new Permutation(cycles, a);
+                fail(cycles + " accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testFromImages() {
+        Alphabet a = new Alphabet("ABCDE");
+        Permutation p = new Permutation(new int[] { 1, 2, 0, 4, 3 }, a);
+        Permutation q = new Permutation("(ABC) (DE)", a);
+        for (int i = 0; i < a.size(); i += 1) {
+            assertEquals(q.permute(i), p.permute(i));
+            assertEquals(q.invert(i), p.invert(i));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testImagesNotBijection() {
+        new Permutation(new int[] { 1, 2, 0, 4, 4 }, new Alphabet("ABCDE"));
+    }
+
+    @Test
+    public void testDerangementFixedPoints() {
+        Alphabet a = new Alphabet("ABCDE");
+        assertFalse(new Permutation("(A) (BCDE)", a).derangement());
+        assertFalse(new Permutation("(BCDE)", a).derangement());
+        assertTrue(new Permutation("(AB) (CDE)", a).derangement());
+        assertFalse(new Permutation(new int[] { 1, 0, 2, 4, 3 }, a)
+                    .derangement());
+    }
+
 
 
 }
@@ -8,9 +8,17 @@ import static enigma.EnigmaException.*;
 class Reflector extends FixedRotor {
 
     /** A non-moving rotor named NAME whose permutation at the 0 setting
-     * is PERM. */
+     * is PERM, which must be a derangement. */
     Reflector(String name, Permutation perm) {
         super(name, perm);
+        if (!perm.derangement()) {
+            throw error("Reflector %s maps a character to itself.", name);
+        }
+    }
+
+    @Override
+    Rotor copy() {
+        return copyState(new Reflector(name(), permutation()));
     }
 
     @Override
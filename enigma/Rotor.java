@@ -7,6 +7,15 @@ import static enigma.EnigmaException.*;
  */
 class Rotor {
 
+    /** Largest alphabet size for which int tables of a rotor's
+     *  conversions at every setting, such as CompiledMachine's, are
+     *  built. */
+    static final int TABLE_LIMIT = 256;
+
+    /** Largest alphabet size for which precompute() builds tables.  They
+     *  hold shorts, half the size of int tables, whatever the size. */
+    static final int SHORT_TABLE_LIMIT = 1024;
+
     /** Rotor setting. */
     private int setting;
 
@@ -14,9 +23,48 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
+        _size = perm.size();
         this.setting = 0;
     }
 
+    /** Precompute my forward and backward conversions at every setting,
+     *  so that convertForward and convertBackward become a single table
+     *  read.  Does nothing if my alphabet has more than SHORT_TABLE_LIMIT
+     *  characters.  Returns true iff I have the tables. */
+    boolean precompute() {
+        int n = _size;
+        if (_forwardShorts == null && n <= SHORT_TABLE_LIMIT) {
+            short[] forward = new short[n * n];
+            short[] backward = new short[n * n];
+            for (int s = 0; s < n; s++) {
+                for (int p = 0; p < n; p++) {
+                    forward[s * n + p] = (short)
+                        _permutation.wrap(_permutation.permute(p + s) - s);
+                    backward[s * n + p] = (short)
+                        _permutation.wrap(_permutation.invert(p + s) - s);
+                }
+            }
+            _backwardShorts = backward;
+            _forwardShorts = forward;
+        }
+        return _forwardShorts != null;
+    }
+
+    /** Return a rotor with my name, wiring, and current setting whose
+     *  setting can change independently of mine.  Shares my permutation
+     *  and precomputed tables. */
+    Rotor copy() {
+        return copyState(new Rotor(_name, _permutation));
+    }
+
+    /** Give COPY my setting and precomputed tables, and return it. */
+    Rotor copyState(Rotor copy) {
+        copy._forwardShorts = _forwardShorts;
+        copy._backwardShorts = _backwardShorts;
+        copy.setting = this.setting;
+        return copy;
+    }
+
     /** Return my name. */
     String name() {
         return _name;
@@ -34,7 +82,7 @@ class Rotor {
 
     /** Return the size of my alphabet. */
     int size() {
-        return _permutation.size();
+        return _size;
     }
 
     /** Return true iff I have a ratchet and can move. */
@@ -62,19 +110,44 @@ class Rotor {
         this.setting = _permutation.alphabet().toInt(cposn);
     }
 
+    /** Return true iff precompute() has built my tables. */
+    boolean precomputed() {
+        return _forwardShorts != null;
+    }
+
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int num = _permutation.permute(p + this.setting);
-        int result = _permutation.wrap(num - this.setting);
+        return convertForward(p, this.setting);
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation when at setting POSN, regardless of
+     *  my actual setting. */
+    int convertForward(int p, int posn) {
+        if (_forwardShorts != null) {
+            return _forwardShorts[posn * _size + p];
+        }
+        int num = _permutation.permute(p + posn);
+        int result = _permutation.wrap(num - posn);
         return result;
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int num = _permutation.invert(e + this.setting);
-        int result = _permutation.wrap(num - this.setting);
+        return convertBackward(e, this.setting);
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation when at setting POSN,
+     *  regardless of my actual setting. */
+    int convertBackward(int e, int posn) {
+        if (_backwardShorts != null) {
+            return _backwardShorts[posn * _size + e];
+        }
+        int num = _permutation.invert(e + posn);
+        int result = _permutation.wrap(num - posn);
         return result;
     }
 
@@ -87,7 +160,13 @@ class Rotor {
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
-        if (notches().indexOf(alphabet().toChar(this.setting)) == -1) {
+        return atNotch(this.setting);
+    }
+
+    /** Returns true iff I would allow the rotor to my left to advance
+     *  when at setting POSN. */
+    boolean atNotch(int posn) {
+        if (notches().indexOf(alphabet().toCodePoint(posn)) == -1) {
             return false;
         }
         return true;
@@ -108,4 +187,14 @@ class Rotor {
     /** The permutation implemented by this rotor in its 0 position. */
     private Permutation _permutation;
 
+    /** The size of my alphabet. */
+    private final int _size;
+
+    /** When non-null, my forward conversion of P at setting S, at
+     *  index S * size() + P. */
+    private short[] _forwardShorts;
+
+    /** My backward conversions, laid out as _forwardShorts, or null. */
+    private short[] _backwardShorts;
+
 }
@@ -0,0 +1,166 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors available to a machine, and the rotor orders and start
+ *  positions they allow, for searches over unknown settings.
+ *  @author Kelvin Mo
+ */
+class RotorCatalog {
+
+    /** The catalog of machines shaped like MACHINE (its alphabet, number
+     *  of slots, and number of pawls) using the rotors available to it. */
+    RotorCatalog(Machine machine) {
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _numPawls = machine.numPawls();
+        _rotors = machine.allRotors();
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of slots of my machines. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return every rotor order I allow: a reflector, then distinct
+     *  non-moving rotors up to the first pawl, then distinct moving
+     *  rotors. */
+    List<String[]> orders() {
+        ArrayList<String[]> result = new ArrayList<>();
+        addOrders(new String[_numRotors], 0, result);
+        return result;
+    }
+
+    /** Return the rotors named by ORDER. */
+    Rotor[] rotors(String[] order) {
+        Rotor[] result = new Rotor[order.length];
+        for (int i = 0; i < order.length; i++) {
+            for (Rotor rotor : _rotors) {
+                if (rotor.name().equals(order[i])) {
+                    result[i] = rotor;
+                }
+            }
+            if (result[i] == null) {
+                throw error("Rotor %s not found.", order[i]);
+            }
+        }
+        return result;
+    }
+
+    /** Return a machine with the rotors named by ORDER at SETTINGS and
+     *  plugboard PLUGBOARD (null for none). */
+    CompiledMachine compile(String[] order, int[] settings,
+                            Permutation plugboard) {
+        return new CompiledMachine(_alphabet, rotors(order), settings,
+                                   plugboard);
+    }
+
+    /** Return the indices of the characters of TEXT, which must all be in
+     *  my alphabet. */
+    int[] indices(String text) {
+        int[] result = new int[text.codePointCount(0, text.length())];
+        for (int i = 0, k = 0; k < result.length; k++) {
+            int cp = text.codePointAt(i);
+            result[k] = _alphabet.indexOf(cp);
+            if (result[k] < 0) {
+                throw error("character %c not in alphabet", cp);
+            }
+            i += Character.charCount(cp);
+        }
+        return result;
+    }
+
+    /** Advance SETTINGS to the next start position, counting in slots
+     *  FROM and up (the last slot fastest).  Returns false once every
+     *  position has been visited. */
+    boolean nextPosition(int[] settings, int from) {
+        for (int i = settings.length - 1; i >= from; i--) {
+            settings[i] += 1;
+            if (settings[i] < _alphabet.size()) {
+                return true;
+            }
+            settings[i] = 0;
+        }
+        return false;
+    }
+
+    /** Return the settings line of an input file, such as
+     *  "* B Beta III IV I AXLE (HQ) (EX)", for rotors ORDER at SETTINGS
+     *  (one per slot) with plugboard PLUGBOARD (the image of each
+     *  index). */
+    String settingsLine(String[] order, int[] settings, int[] plugboard) {
+        StringBuilder line = new StringBuilder("*");
+        for (String name : order) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int i = 1; i < settings.length; i++) {
+            line.appendCodePoint(_alphabet.toCodePoint(settings[i]));
+        }
+        for (int c = 0; c < plugboard.length; c++) {
+            if (plugboard[c] > c) {
+                line.append(" (").appendCodePoint(_alphabet.toCodePoint(c))
+                    .appendCodePoint(_alphabet.toCodePoint(plugboard[c]))
+                    .append(')');
+            }
+        }
+        return line.toString();
+    }
+
+    /** Fill ORDER from slot K on with every choice I allow, adding each
+     *  complete order to RESULT. */
+    private void addOrders(String[] order, int k, List<String[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (Rotor rotor : _rotors) {
+            if (fits(rotor, k) && !used(order, k, rotor.name())) {
+                order[k] = rotor.name();
+                addOrders(order, k + 1, result);
+            }
+        }
+    }
+
+    /** Return true iff ROTOR may go in slot K. */
+    private boolean fits(Rotor rotor, int k) {
+        if (k == 0) {
+            return rotor.reflecting();
+        }
+        if (k < _numRotors - _numPawls) {
+            return !rotor.rotates() && !rotor.reflecting();
+        }
+        return rotor.rotates();
+    }
+
+    /** Return true iff NAME is among the first K entries of ORDER. */
+    private static boolean used(String[] order, int k, String name) {
+        for (int i = 0; i < k; i++) {
+            if (order[i].equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** Number of slots of my machines. */
+    private final int _numRotors;
+
+    /** Number of pawls (moving rotors) of my machines. */
+    private final int _numPawls;
+
+    /** My rotors. */
+    private final Rotor[] _rotors;
+
+}
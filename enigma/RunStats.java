@@ -0,0 +1,200 @@
+package enigma;
+
+import java.io.PrintStream;
+
+/** Where the time of a run of Main goes: configuration parsing,
+ *  reconfiguration by settings lines, conversion, and output, with the
+ *  number of characters and messages converted and a histogram of the
+ *  time taken to convert each message (for a streamed message, from
+ *  its first letter to the end of its line, see MessageStream).  The
+ *  rest of the wall time is spent reading input and in the JVM.
+ *
+ *  Each measured step is bracketed by clock() and one of the recording
+ *  methods.  OFF records nothing, and its clock() does not read the
+ *  system clock, so an unmeasured run pays only for a few tests of a
+ *  final field.
+ *  @author Kelvin Mo
+ */
+class RunStats {
+
+    /** Statistics that are not kept. */
+    static final RunStats OFF = new RunStats(false);
+
+    /** Statistics of a run starting now. */
+    RunStats() {
+        this(true);
+    }
+
+    /** Statistics of a run starting now, kept iff ENABLED. */
+    private RunStats(boolean enabled) {
+        _enabled = enabled;
+        _start = enabled ? System.nanoTime() : 0;
+    }
+
+    /** Return the time, in nanoseconds, at which a step starts. */
+    long clock() {
+        return _enabled ? System.nanoTime() : 0;
+    }
+
+    /** Record that parsing the configuration began at START. */
+    void configParsed(long start) {
+        if (_enabled) {
+            _configNanos += System.nanoTime() - start;
+        }
+    }
+
+    /** Record that applying a settings line began at START. */
+    void reconfigured(long start) {
+        if (_enabled) {
+            _reconfigurations += 1;
+            _setUpNanos += System.nanoTime() - start;
+        }
+    }
+
+    /** Record that converting a message of CHARS characters began at
+     *  START. */
+    void converted(int chars, long start) {
+        if (_enabled) {
+            long nanos = System.nanoTime() - start;
+            _messages += 1;
+            _chars += chars;
+            _convertNanos += nanos;
+            _latency.record(nanos);
+        }
+    }
+
+    /** Record that converting CHARS characters of a message, not
+     *  necessarily all of it, began at START. */
+    void convertedPart(int chars, long start) {
+        if (_enabled) {
+            _chars += chars;
+            _convertNanos += System.nanoTime() - start;
+        }
+    }
+
+    /** Record the end of a message that began at START, whose characters
+     *  have been recorded, in parts, by convertedPart. */
+    void messageEnded(long start) {
+        if (_enabled) {
+            _messages += 1;
+            _latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /** Record that writing output began at START. */
+    void wrote(long start) {
+        if (_enabled) {
+            _outputNanos += System.nanoTime() - start;
+        }
+    }
+
+    /** Return CONVERTER, with the time it takes to convert recorded
+     *  (by convertedPart) if I am kept. */
+    CharConverter timed(CharConverter converter) {
+        if (!_enabled) {
+            return converter;
+        }
+        return (in, off, len, out) -> {
+            long start = System.nanoTime();
+            converter.convert(in, off, len, out);
+            convertedPart(len, start);
+        };
+    }
+
+    /** Return the number of characters converted. */
+    long chars() {
+        return _chars;
+    }
+
+    /** Return the number of messages converted. */
+    long messages() {
+        return _messages;
+    }
+
+    /** Return the number of settings lines applied. */
+    long reconfigurations() {
+        return _reconfigurations;
+    }
+
+    /** Return the histogram of message conversion times. */
+    LatencyHistogram latency() {
+        return _latency;
+    }
+
+    /** Print a summary of my statistics to OUT. */
+    void report(PrintStream out) {
+        if (!_enabled) {
+            return;
+        }
+        long wall = System.nanoTime() - _start;
+        long other = wall - _configNanos - _setUpNanos - _convertNanos
+            - _outputNanos;
+        out.printf("Run statistics:%n");
+        out.printf("  wall time          %10.3f s%n", seconds(wall));
+        out.printf("  config parse       %10.3f s%n", seconds(_configNanos));
+        out.printf("  reconfiguration    %10.3f s  (%d settings lines)%n",
+                   seconds(_setUpNanos), _reconfigurations);
+        out.printf("  conversion         %10.3f s  (%d chars, %.0f chars/s)%n",
+                   seconds(_convertNanos), _chars,
+                   rate(_chars, _convertNanos));
+        out.printf("  output             %10.3f s%n", seconds(_outputNanos));
+        out.printf("  input and other    %10.3f s%n", seconds(other));
+        out.printf("  messages           %10d    (%.1f messages/s)%n",
+                   _messages, rate(_messages, wall));
+        if (_latency.count() > 0) {
+            out.printf("  message latency    p50 %s  p90 %s  p99 %s  max %s"
+                       + "%n",
+                       micros(_latency.percentile(0.5)),
+                       micros(_latency.percentile(0.9)),
+                       micros(_latency.percentile(0.99)),
+                       micros(_latency.max()));
+        }
+    }
+
+    /** Return NANOS in seconds. */
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    /** Return the rate of COUNT events in NANOS nanoseconds, per second,
+     *  or 0 if NANOS is not positive. */
+    private static double rate(long count, long nanos) {
+        return nanos <= 0 ? 0 : count / seconds(nanos);
+    }
+
+    /** Return NANOS formatted in microseconds. */
+    private static String micros(long nanos) {
+        return String.format("%.1f us", nanos / 1e3);
+    }
+
+    /** True iff I keep statistics. */
+    private final boolean _enabled;
+
+    /** Time at which the run started. */
+    private final long _start;
+
+    /** Time spent parsing the configuration. */
+    private long _configNanos;
+
+    /** Time spent applying settings lines. */
+    private long _setUpNanos;
+
+    /** Time spent converting. */
+    private long _convertNanos;
+
+    /** Time spent writing output. */
+    private long _outputNanos;
+
+    /** Number of settings lines applied. */
+    private long _reconfigurations;
+
+    /** Number of messages converted. */
+    private long _messages;
+
+    /** Number of characters converted. */
+    private long _chars;
+
+    /** Time taken to convert each message. */
+    private final LatencyHistogram _latency = new LatencyHistogram();
+
+}
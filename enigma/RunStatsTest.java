@@ -0,0 +1,86 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the RunStats and LatencyHistogram
+ *  classes.
+ *  @author Kelvin Mo
+ */
+public class RunStatsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBuckets() {
+        int previous = -1;
+        for (long v = 0; v < 1 << 20; v += 1 + v / 50) {
+            int index = LatencyHistogram.index(v);
+            assertTrue(index >= previous);
+            assertTrue(v <= LatencyHistogram.highest(index));
+            if (index > 0) {
+                assertTrue(v > LatencyHistogram.highest(index - 1));
+            }
+            assertTrue(LatencyHistogram.highest(index) - v <= v / 16);
+            previous = index;
+        }
+        int last = LatencyHistogram.index(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highest(last));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.5));
+        for (long v = 1; v <= 1000; v += 1) {
+            histogram.record(v * 1000);
+        }
+        histogram.record(-5);
+        assertEquals(1001, histogram.count());
+        assertEquals(1000000, histogram.max());
+        assertEquals(0, histogram.percentile(0));
+        long median = histogram.percentile(0.5);
+        assertTrue(median >= 500000 && median <= 500000 * 17 / 16);
+        long p99 = histogram.percentile(0.99);
+        assertTrue(p99 >= 990000 && p99 <= 1000000);
+        assertEquals(1000000, histogram.percentile(1));
+    }
+
+    @Test
+    public void testCounters() {
+        RunStats stats = new RunStats();
+        stats.reconfigured(stats.clock());
+        stats.converted(10, stats.clock());
+        stats.converted(5, stats.clock());
+        char[] buf = "ABCD".toCharArray();
+        stats.timed((in, off, len, out) -> { }).convert(buf, 0, 4, buf);
+        assertEquals(1, stats.reconfigurations());
+        assertEquals(2, stats.messages());
+        assertEquals(19, stats.chars());
+        assertEquals(2, stats.latency().count());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stats.report(new PrintStream(out, true));
+        assertTrue(out.toString().contains("(19 chars,"));
+    }
+
+    @Test
+    public void testOff() {
+        CharConverter converter = (in, off, len, out) -> { };
+        assertSame(converter, RunStats.OFF.timed(converter));
+        assertEquals(0, RunStats.OFF.clock());
+        RunStats.OFF.converted(10, 0);
+        assertEquals(0, RunStats.OFF.chars());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RunStats.OFF.report(new PrintStream(out, true));
+        assertEquals(0, out.size());
+    }
+
+}
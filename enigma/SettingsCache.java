@@ -0,0 +1,59 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The compiled form of each of the MAX_ENTRIES distinct settings lines
+ *  most recently used, for a Machine holding all the rotors such lines
+ *  may name.  Safe for use by any number of threads.
+ *  @author Kelvin Mo
+ */
+class SettingsCache {
+
+    /** Maximum number of compiled machines I keep. */
+    static final int MAX_ENTRIES = 1024;
+
+    /** A cache that compiles settings lines by configuring MACHINE.
+     *  MACHINE is reconfigured by compilation, and should not otherwise
+     *  be used meanwhile. */
+    SettingsCache(Machine machine) {
+        _machine = machine;
+    }
+
+    /** Return the compiled machine for SETTINGS, a settings line in the
+     *  "*" format of an input file, compiling it if it is not already
+     *  cached.  Throws an EnigmaException if SETTINGS is malformed. */
+    CompiledMachine compile(String settings) {
+        synchronized (_compiled) {
+            CompiledMachine result = _compiled.get(settings);
+            if (result == null) {
+                Main.setUp(_machine, settings);
+                result = _machine.compile();
+                _compiled.put(settings, result);
+            }
+            return result;
+        }
+    }
+
+    /** Return the number of compiled machines I hold. */
+    int size() {
+        synchronized (_compiled) {
+            return _compiled.size();
+        }
+    }
+
+    /** Machine used to compile settings lines. */
+    private final Machine _machine;
+
+    /** Compiled machine for each settings line I hold, least recently
+     *  used first. */
+    private final LinkedHashMap<String, CompiledMachine> _compiled =
+        new LinkedHashMap<String, CompiledMachine>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, CompiledMachine> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+}
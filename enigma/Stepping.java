@@ -0,0 +1,228 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Computes rotor settings many keypresses ahead without pressing each
+ *  key.
+ *
+ *  Under the stepping rule of Machine, the rotor in slot I advances on a
+ *  keypress iff it is the fast rotor, the rotor in slot I + 1 is at a
+ *  notch, or it is itself at a notch and the rotor in slot I - 1 (I > 1)
+ *  rotates.  The rotors in slots I and up therefore move independently
+ *  of everything to their left, and the only thing slot I - 1 sees of
+ *  them is the set of times at which slot I is at a notch.  That set is
+ *  eventually periodic.  Working leftward from the fast rotor, each slot
+ *  is run over one period of the slots to its right, once from each
+ *  position it can be in at the start of a period, which gives the
+ *  period of the slots from it rightward and the times it is at a notch.
+ *  The work depends on the alphabet size and the number of notches, not
+ *  on the number of keypresses skipped.
+ *  @author Kelvin Mo
+ */
+final class Stepping {
+
+    /** Not instantiable. */
+    private Stepping() {
+    }
+
+    /** Advance SETTINGS, the settings of the rotors in slots 0 ..
+     *  SETTINGS.length - 1 (slot 0 being the reflector), by N keypresses.
+     *  NOTCHES[I][P] is true iff the rotor in slot I is at a notch at
+     *  setting P (NOTCHES[I] may be null for a rotor without notches),
+     *  ROTATES[I] is true iff the rotor in slot I rotates, and SIZE is the
+     *  size of the common alphabet. */
+    static void skip(int[] settings, boolean[][] notches, boolean[] rotates,
+                     int size, long n) {
+        if (n < 0) {
+            throw error("cannot step backwards");
+        }
+        if (n == 0 || settings.length < 2) {
+            return;
+        }
+        Times carries = new Times(0, 1, new long[] { 0 }, 1);
+        for (int i = settings.length - 1; i >= 1; i -= 1) {
+            boolean[] notch = notches[i];
+            if (!rotates[i]) {
+                boolean at = notch != null && notch[settings[i]];
+                carries = new Times(0, 1, new long[] { 0 }, at ? 1 : 0);
+                continue;
+            }
+            boolean doubleSteps = i > 1 && rotates[i - 1];
+            Slot slot = new Slot(notch, size, doubleSteps);
+            carries = slot.run(settings[i], carries, n);
+            settings[i] = slot.finalSetting();
+        }
+    }
+
+    /** An eventually periodic set of times.  A time T is a member iff
+     *  it is in TIMES, or T >= TAIL + PERIOD > 0 and
+     *  TAIL + (T - TAIL) % PERIOD is in TIMES.  A PERIOD of 0 means that
+     *  TIMES lists every member of interest. */
+    private static class Times {
+
+        /** The set described above, where the first COUNT elements of
+         *  TIMES are its members below TAIL + PERIOD, in increasing
+         *  order. */
+        Times(long tail, long period, long[] times, int count) {
+            this.tail = tail;
+            this.period = period;
+            this.times = times;
+            this.count = count;
+        }
+
+        /** Returns the index of the first of my listed times that is
+         *  at least T. */
+        int indexOf(long t) {
+            int k = Arrays.binarySearch(times, 0, count, t);
+            return k < 0 ? -k - 1 : k;
+        }
+
+        /** Length of my aperiodic prefix. */
+        final long tail;
+
+        /** Length of my period, or 0 if I am fully listed. */
+        final long period;
+
+        /** My listed times. */
+        final long[] times;
+
+        /** Number of valid entries in times. */
+        final int count;
+    }
+
+    /** One rotating slot, advanced over a range of keypresses. */
+    private static class Slot {
+
+        /** A slot whose rotor has NOTCH over an alphabet of SIZE, and
+         *  that advances on its own when at a notch iff DOUBLESTEPS. */
+        Slot(boolean[] notch, int size, boolean doubleSteps) {
+            _notch = notch == null ? new boolean[size] : notch;
+            _size = size;
+            _doubleSteps = doubleSteps;
+            _record = doubleSteps;
+        }
+
+        /** Return the setting at which the last call to run left me. */
+        int finalSetting() {
+            return _final;
+        }
+
+        /** Run me from SETTING for N keypresses, during which the slot to
+         *  my right is at a notch at the times in CARRIES, and return the
+         *  times at which I am at a notch.  The result is meaningful only
+         *  if I double step, since otherwise no rotor to my left cares. */
+        Times run(int setting, Times carries, long n) {
+            _events = new long[16];
+            _numEvents = 0;
+            long tail = carries.tail, period = carries.period;
+            if (period == 0 || period >= n - tail) {
+                _final = step(setting, 0, n, carries, 0, 0);
+                return new Times(0, 0, _events, _numEvents);
+            }
+            int first = carries.indexOf(tail);
+            int q = step(setting, 0, tail, carries, 0, 0);
+            int[] seen = new int[_size];
+            Arrays.fill(seen, -1);
+            int[] starts = new int[_size + 1];
+            int periods = 0;
+            long start = tail;
+            while (seen[q] < 0 && start < n) {
+                seen[q] = periods;
+                starts[periods] = q;
+                q = step(q, start, start + period, carries, first,
+                         start - tail);
+                periods += 1;
+                start = n - start > period ? start + period : n;
+            }
+            long m = (n - tail) / period;
+            int boundary;
+            if (m < periods) {
+                boundary = starts[(int) m];
+            } else if (seen[q] < 0) {
+                boundary = q;
+            } else {
+                int mu = seen[q], lambda = periods - mu;
+                boundary = starts[mu + (int) ((m - mu) % lambda)];
+            }
+            long from = tail + m * period;
+            boolean record = _record;
+            _record = false;
+            _final = step(boundary, from, n, carries, first, from - tail);
+            _record = record;
+            if (start >= n) {
+                return new Times(0, 0, _events, _numEvents);
+            }
+            int mu = seen[q];
+            return new Times(tail + mu * period, (periods - mu) * period,
+                             _events, _numEvents);
+        }
+
+        /** Return my setting at time TO, given that it is Q at time FROM
+         *  and that the slot to my right is at a notch at times
+         *  CARRIES.times[K] + SHIFT for K >= FIRST.  Records the times in
+         *  [FROM, TO) at which I am at a notch if _record. */
+        private int step(int q, long from, long to, Times carries, int first,
+                         long shift) {
+            long[] times = carries.times;
+            int k = first, count = carries.count;
+            long t = from;
+            while (k < count && times[k] + shift < t) {
+                k += 1;
+            }
+            while (t < to) {
+                if (_doubleSteps && _notch[q]) {
+                    record(t);
+                    q = q + 1 == _size ? 0 : q + 1;
+                    t += 1;
+                    while (k < count && times[k] + shift < t) {
+                        k += 1;
+                    }
+                    continue;
+                }
+                if (k >= count || times[k] + shift >= to) {
+                    break;
+                }
+                t = times[k] + shift + 1;
+                k += 1;
+                q = q + 1 == _size ? 0 : q + 1;
+            }
+            return q;
+        }
+
+        /** Note that I am at a notch at time T, if recording. */
+        private void record(long t) {
+            if (!_record) {
+                return;
+            }
+            if (_numEvents == _events.length) {
+                _events = Arrays.copyOf(_events, 2 * _numEvents);
+            }
+            _events[_numEvents] = t;
+            _numEvents += 1;
+        }
+
+        /** True at each setting at which I am at a notch. */
+        private final boolean[] _notch;
+
+        /** Size of my alphabet. */
+        private final int _size;
+
+        /** True iff I advance on my own when at a notch. */
+        private final boolean _doubleSteps;
+
+        /** True iff times at a notch are being recorded. */
+        private boolean _record;
+
+        /** Recorded times at a notch, in increasing order. */
+        private long[] _events;
+
+        /** Number of valid entries in _events. */
+        private int _numEvents;
+
+        /** My setting at the end of the last run. */
+        private int _final;
+    }
+
+}
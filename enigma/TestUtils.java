@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -126,4 +127,39 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** Notches of the moving naval rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+    }
+
+    /** Return a new five-slot naval machine holding reflectors B and C,
+     *  fixed rotors Beta and Gamma, and moving rotors I - V. */
+    static Machine naval() {
+        Alphabet alpha = new Alphabet(UPPER_STRING);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : new String[] { "B", "C" }) {
+            rotors.add(new Reflector(name,
+                                     new Permutation(NAVALA.get(name),
+                                                     alpha)));
+        }
+        for (String name : new String[] { "Beta", "Gamma" }) {
+            rotors.add(new FixedRotor(name,
+                                      new Permutation(NAVALA.get(name),
+                                                      alpha)));
+        }
+        for (String name : NAVAL_NOTCHES.keySet()) {
+            rotors.add(new MovingRotor(name,
+                                       new Permutation(NAVALA.get(name),
+                                                       alpha),
+                                       NAVAL_NOTCHES.get(name)));
+        }
+        return new Machine(alpha, 5, 3, rotors);
+    }
+
 }
@@ -0,0 +1,25 @@
+package enigma;
+
+/** A measure of how much a text looks like plaintext, used to rank trial
+ *  decryptions.  Scorers may keep scratch state, so each thread should
+ *  use its own.
+ *  @author Kelvin Mo
+ */
+interface TextScorer {
+
+    /** Return the score of the first LEN indices of TEXT (indices into
+     *  the alphabet the scorer was made for).  Higher scores are more
+     *  like plaintext. */
+    double score(int[] text, int len);
+
+    /** Return the score of the first LEN indices of AFTER, given that
+     *  SCORE is the score of BEFORE and that the two differ only at the
+     *  COUNT positions CHANGED[0 .. COUNT - 1], in increasing order.
+     *  Scorers that can do better than scoring AFTER afresh, as this
+     *  does, should override it. */
+    default double rescore(int[] before, double score, int[] after, int len,
+                           int[] changed, int count) {
+        return score(after, len);
+    }
+
+}
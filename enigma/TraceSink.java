@@ -0,0 +1,39 @@
+package enigma;
+
+/** Receives a record of keypresses on a Machine, for debugging.  A
+ *  machine asks its sink whether to trace each keypress, and only works
+ *  out the record of those it is told to.
+ *  @author Kelvin Mo
+ */
+interface TraceSink {
+
+    /** A sink that traces nothing.  Machines start with it, and do not
+     *  consult it at all. */
+    TraceSink NONE = new TraceSink() {
+        @Override
+        public boolean sample() {
+            return false;
+        }
+
+        @Override
+        public void trace(Alphabet alphabet, int[] settings, int[] path,
+                          int len) {
+        }
+    };
+
+    /** Return true iff the next keypress should be traced.  Called once
+     *  for every keypress, after the rotors advance. */
+    boolean sample();
+
+    /** Record a keypress on a machine over ALPHABET whose slots (the
+     *  reflector first) are at SETTINGS.  PATH[0 .. LEN - 1] are the
+     *  indices the signal passes through: the key pressed, its image
+     *  under the plugboard, its image after each rotor in the order the
+     *  signal passes them, and the lamp lit. */
+    void trace(Alphabet alphabet, int[] settings, int[] path, int len);
+
+    /** Write out anything I have buffered. */
+    default void flush() {
+    }
+
+}
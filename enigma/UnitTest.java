@@ -14,9 +14,22 @@ public class UnitTest {
             System.exit(textui.runClasses(PermutationTest.class,
                     MovingRotorTest.class));
         }
-        System.exit(textui.runClasses(PermutationTest.class,
+        System.exit(textui.runClasses(AlphabetTest.class,
+                PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                ConfigCacheTest.class,
+                MachineTest.class,
+                LaneMachineTest.class,
+                ByteMachineTest.class,
+                KeystreamCacheTest.class,
+                BatchEncryptorTest.class,
+                KeyRecoveryTest.class,
+                NgramScorerTest.class,
+                BombeTest.class,
+                EnigmaServerTest.class,
+                RunStatsTest.class,
+                MessageStreamTest.class,
+                MappedIOTest.class));
     }
 
 }
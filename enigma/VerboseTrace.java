@@ -0,0 +1,45 @@
+package enigma;
+
+import java.io.PrintStream;
+
+/** Traces every keypress to a stream in the format of --verbose: the
+ *  settings of the slots after the reflector in brackets, then the key
+ *  pressed, its image under the plugboard, and the lamp lit, as in
+ *  "[AXLE] F -> F -> Q".
+ *  @author Kelvin Mo
+ */
+class VerboseTrace implements TraceSink {
+
+    /** A sink writing to OUT. */
+    VerboseTrace(PrintStream out) {
+        _out = out;
+    }
+
+    @Override
+    public boolean sample() {
+        return true;
+    }
+
+    @Override
+    public void trace(Alphabet alphabet, int[] settings, int[] path,
+                      int len) {
+        StringBuilder line = _line;
+        line.setLength(0);
+        line.append('[');
+        for (int r = 1; r < settings.length; r += 1) {
+            line.appendCodePoint(alphabet.toCodePoint(settings[r]));
+        }
+        line.append("] ").appendCodePoint(alphabet.toCodePoint(path[0]))
+            .append(" -> ").appendCodePoint(alphabet.toCodePoint(path[1]))
+            .append(" -> ")
+            .appendCodePoint(alphabet.toCodePoint(path[len - 1]));
+        _out.println(line);
+    }
+
+    /** Destination of my trace. */
+    private final PrintStream _out;
+
+    /** Scratch buffer for a line. */
+    private final StringBuilder _line = new StringBuilder();
+
+}